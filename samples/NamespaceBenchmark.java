@@ -0,0 +1,103 @@
+import java.io.*;
+
+import org.kxml2.io.*;
+import org.xmlpull.v1.*;
+
+/**
+ * Times parsing with namespace processing and serializing of a
+ * document declaring many prefixes, as produced by SOAP stacks. The
+ * optional arguments are the number of prefixes and of elements. */
+
+public class NamespaceBenchmark {
+
+	public static void main(String[] args)
+		throws IOException, XmlPullParserException {
+
+		int prefixes = args.length > 0 ? Integer.parseInt(args[0]) : 40;
+		int elements = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+
+		String doc = build(prefixes, elements);
+
+		System.out.println(
+			prefixes + " prefixes, " + elements + " elements, "
+				+ doc.length() + " chars");
+
+		for (int run = 0; run < 5; run++) {
+
+			long t0 = System.currentTimeMillis();
+
+			KXmlParser parser = new KXmlParser();
+			parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+			parser.setInput(new StringReader(doc));
+
+			KXmlSerializer serializer = new KXmlSerializer();
+			serializer.setOutput(new StringWriter());
+
+			while (parser.next() != XmlPullParser.END_DOCUMENT) {
+				switch (parser.getEventType()) {
+					case XmlPullParser.START_TAG :
+						int d = parser.getDepth();
+						for (int i = parser.getNamespaceCount(d - 1);
+							i < parser.getNamespaceCount(d);
+							i++)
+							serializer.setPrefix(
+								parser.getNamespacePrefix(i),
+								parser.getNamespaceUri(i));
+						serializer.startTag(
+							parser.getNamespace(),
+							parser.getName());
+						for (int i = 0; i < parser.getAttributeCount(); i++)
+							serializer.attribute(
+								parser.getAttributeNamespace(i),
+								parser.getAttributeName(i),
+								parser.getAttributeValue(i));
+						break;
+
+					case XmlPullParser.END_TAG :
+						serializer.endTag(
+							parser.getNamespace(),
+							parser.getName());
+						break;
+
+					case XmlPullParser.TEXT :
+						serializer.text(parser.getText());
+						break;
+				}
+			}
+			serializer.endDocument();
+
+			System.out.println(
+				"run " + run + ": "
+					+ (System.currentTimeMillis() - t0) + " ms");
+		}
+	}
+
+	/**
+	 * Builds an envelope declaring the given number of prefixes, with
+	 * elements and attributes from all of them, some of them nested
+	 * and redeclaring prefixes */
+
+	static String build(int prefixes, int elements) {
+
+		StringBuffer buf = new StringBuffer();
+		buf.append("<env:Envelope xmlns:env='urn:envelope'");
+		for (int i = 0; i < prefixes; i++)
+			buf.append(" xmlns:p" + i + "='urn:ns" + i + "'");
+		buf.append("><env:Body>");
+
+		for (int i = 0; i < elements; i++) {
+			String p = "p" + (i % prefixes);
+			String q = "p" + (i * 7 % prefixes);
+			buf.append("<" + p + ":item " + q + ":id='" + i + "'>");
+			if (i % 10 == 0)
+				buf.append("<" + q + ":inner xmlns:" + p + "='urn:local'>");
+			buf.append("<" + q + ":value>" + i + "</" + q + ":value>");
+			if (i % 10 == 0)
+				buf.append("</" + q + ":inner>");
+			buf.append("</" + p + ":item>");
+		}
+
+		buf.append("</env:Body></env:Envelope>");
+		return buf.toString();
+	}
+}
@@ -0,0 +1,95 @@
+/* Copyright (c) 2002,2003, Stefan Haustein, Oberhausen, Rhld., Germany
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The  above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE. */
+
+package org.kxml2.io;
+
+import org.xmlpull.v1.*;
+
+/** 
+ * An open addressing table of attribute indices for the duplicate
+ * attribute check of KXmlParser, which keeps the attributes of a start
+ * tag as namespace, prefix, name and value quadruples. The table is
+ * reused for all start tags of a parser. */
+
+final class AttributeTable {
+
+    /** attribute index + 1 per slot, 0 if free */
+
+    private int[] table = new int[16];
+
+    /** 
+     * Throws an exception located at the given parser if two of the
+     * given attributes have the same name, or the same namespace and
+     * local name if byNamespace is set. The names are hashed, so the
+     * check takes linear time also for elements with many attributes. */
+
+    void checkDuplicates(
+        String[] attributes,
+        int count,
+        boolean byNamespace,
+        XmlPullParser parser)
+        throws XmlPullParserException {
+
+        if (count < 2)
+            return;
+
+        int bits = 2;
+        while (1 << bits < count << 1)
+            bits++;
+
+        int size = 1 << bits;
+
+        if (table.length < size)
+            table = new int[size];
+
+        int[] table = this.table;
+        int mask = size - 1;
+
+        for (int i = 0; i < size; i++)
+            table[i] = 0;
+
+        for (int i = 0; i < count; i++) {
+            String ns = byNamespace ? attributes[i << 2] : null;
+            String name = attributes[(i << 2) + 2];
+            int h = name.hashCode();
+            if (ns != null)
+                h = h * 31 + ns.hashCode();
+
+            // multiplicative hashing spreads similar names like a1, a2
+
+            int slot = (h * 0x9e3779b9) >>> (32 - bits);
+
+            while (table[slot] != 0) {
+                int j = (table[slot] - 1) << 2;
+                if (name.equals(attributes[j + 2])
+                    && (ns == null || ns.equals(attributes[j])))
+                    throw new XmlPullParserException(
+                        "Duplicate Attribute: "
+                            + (byNamespace ? "{" + ns + "}" : "")
+                            + name,
+                        parser,
+                        null);
+                slot = (slot + 1) & mask;
+            }
+
+            table[slot] = i + 1;
+        }
+    }
+}
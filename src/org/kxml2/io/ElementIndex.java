@@ -0,0 +1,285 @@
+/* Copyright (c) 2002,2003, Stefan Haustein, Oberhausen, Rhld., Germany
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The  above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE. */
+
+package org.kxml2.io;
+
+import java.io.*;
+import java.util.*;
+import org.xmlpull.v1.*;
+
+/** 
+ * An index of the byte ranges of the elements with a given name in a
+ * large document, keyed by an attribute value or by the position of
+ * the element. The index is written in one pass over the document and
+ * stores the namespace declarations in scope for each element, so
+ * that openAt() can start parsing directly at an indexed element. */
+
+public class ElementIndex {
+
+    private static final int MAGIC = 0x4b584931; // "KXI1"
+
+    private static final int END = 0;
+    private static final int ENTRY = 1;
+    private static final int CONTEXT = 2;
+
+    /** An indexed element */
+
+    public static class Entry {
+
+        /** The key attribute value, or the position of the element */
+        public final String key;
+
+        /** Byte offset of the start tag */
+        public final long start;
+
+        /** Byte offset following the end tag */
+        public final long end;
+
+        final String[] namespaces;
+
+        Entry(String key, long start, long end, String[] namespaces) {
+            this.key = key;
+            this.start = start;
+            this.end = end;
+            this.namespaces = namespaces;
+        }
+    }
+
+    private String encoding;
+    private boolean processNsp;
+    private Vector entries = new Vector();
+    private Hashtable keys = new Hashtable();
+
+    private ElementIndex() {
+    }
+
+    /** 
+     * Reads the input of the given parser, which must be set to
+     * UTF-8, US-ASCII or ISO-8859-1 byte input, and writes an index of
+     * all elements with the given local name to out. The elements are
+     * keyed by the value of the given attribute, or by their position
+     * if the attribute is null or missing. */
+
+    public static void write(
+        KXmlParser parser,
+        String name,
+        String keyAttribute,
+        OutputStream out)
+        throws IOException, XmlPullParserException {
+
+        String encoding = parser.getByteEncoding();
+
+        if (encoding == null)
+            throw new XmlPullParserException(
+                "byte input decoded by the parser expected");
+
+        DataOutputStream dos = new DataOutputStream(out);
+        String[] context = null;
+        int count = 0;
+
+        dos.writeInt(MAGIC);
+        dos.writeUTF(encoding);
+        dos.writeBoolean(
+            parser.getFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES));
+
+        while (parser.skipToStartTag(null, name) == XmlPullParser.START_TAG) {
+
+            String[] namespaces = getContext(parser);
+
+            if (!equals(namespaces, context)) {
+                dos.writeByte(CONTEXT);
+                dos.writeShort(namespaces.length >> 1);
+                for (int i = 0; i < namespaces.length; i++) {
+                    dos.writeBoolean(namespaces[i] != null);
+                    if (namespaces[i] != null)
+                        dos.writeUTF(namespaces[i]);
+                }
+                context = namespaces;
+            }
+
+            String key = keyAttribute != null
+                ? parser.getAttributeValue(null, keyAttribute)
+                : null;
+            if (key == null)
+                key = String.valueOf(count);
+
+            long start = parser.getEventStartByteOffset();
+            parser.skipSubTree();
+
+            dos.writeByte(ENTRY);
+            dos.writeUTF(key);
+            dos.writeLong(start);
+            dos.writeLong(parser.getEventEndByteOffset());
+            count++;
+        }
+
+        dos.writeByte(END);
+        dos.flush();
+    }
+
+    /** 
+     * Returns the namespace declarations in scope outside the current
+     * element as prefix and namespace pairs */
+
+    private static String[] getContext(KXmlParser parser)
+        throws XmlPullParserException {
+
+        int n = parser.getNamespaceCount(parser.getDepth() - 1);
+        String[] namespaces = new String[n << 1];
+
+        for (int i = 0; i < n; i++) {
+            namespaces[i << 1] = parser.getNamespacePrefix(i);
+            namespaces[(i << 1) + 1] = parser.getNamespaceUri(i);
+        }
+        return namespaces;
+    }
+
+    private static boolean equals(String[] a, String[] b) {
+        if (a == null || b == null || a.length != b.length)
+            return false;
+        for (int i = 0; i < a.length; i++)
+            if (a[i] == null ? b[i] != null : !a[i].equals(b[i]))
+                return false;
+        return true;
+    }
+
+    /** Reads an index written by write() */
+
+    public static ElementIndex read(InputStream in) throws IOException {
+
+        DataInputStream dis = new DataInputStream(in);
+
+        if (dis.readInt() != MAGIC)
+            throw new IOException("not an element index");
+
+        ElementIndex index = new ElementIndex();
+        index.encoding = dis.readUTF();
+        index.processNsp = dis.readBoolean();
+
+        String[] context = new String[0];
+
+        while (true) {
+            int tag = dis.readByte();
+
+            if (tag == END)
+                break;
+
+            if (tag == CONTEXT) {
+                context = new String[dis.readShort() << 1];
+                for (int i = 0; i < context.length; i++)
+                    context[i] = dis.readBoolean() ? dis.readUTF() : null;
+            }
+            else if (tag == ENTRY) {
+                Entry entry =
+                    new Entry(
+                        dis.readUTF(),
+                        dis.readLong(),
+                        dis.readLong(),
+                        context);
+                index.entries.addElement(entry);
+                if (!index.keys.containsKey(entry.key))
+                    index.keys.put(entry.key, entry);
+            }
+            else
+                throw new IOException("corrupt element index");
+        }
+        return index;
+    }
+
+    /** Returns the first entry with the given key, or null */
+
+    public Entry get(String key) {
+        return (Entry) keys.get(key);
+    }
+
+    /** Returns the number of entries */
+
+    public int size() {
+        return entries.size();
+    }
+
+    /** Returns the entry at the given position */
+
+    public Entry entryAt(int index) {
+        return (Entry) entries.elementAt(index);
+    }
+
+    /** 
+     * Returns a parser for the given entry, reading from the given
+     * stream of the indexed document, which must be positioned at its
+     * start. The stream is skipped to the entry, which should be cheap
+     * for a FileInputStream. The parser returns the indexed element,
+     * with its namespace context, and then END_DOCUMENT. */
+
+    public KXmlParser openAt(InputStream in, Entry entry)
+        throws IOException, XmlPullParserException {
+
+        long skip = entry.start;
+
+        while (skip > 0) {
+            long n = in.skip(skip);
+            if (n <= 0)
+                throw new EOFException();
+            skip -= n;
+        }
+
+        KXmlParser parser = new KXmlParser();
+        parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, processNsp);
+        parser.setInput(new RangeInputStream(in, entry.end - entry.start), encoding);
+        parser.setNamespaceContext(entry.namespaces);
+        return parser;
+    }
+
+    /** Reads the given number of bytes from a stream */
+
+    private static class RangeInputStream extends InputStream {
+
+        private InputStream in;
+        private long left;
+
+        RangeInputStream(InputStream in, long length) {
+            this.in = in;
+            this.left = length;
+        }
+
+        public int read() throws IOException {
+            if (left <= 0)
+                return -1;
+            left--;
+            return in.read();
+        }
+
+        public int read(byte[] buf, int off, int len) throws IOException {
+            if (left <= 0)
+                return -1;
+            if (len > left)
+                len = (int) left;
+            int cnt = in.read(buf, off, len);
+            if (cnt > 0)
+                left -= cnt;
+            return cnt;
+        }
+
+        public int available() throws IOException {
+            int available = in.available();
+            return available < left ? available : (int) left;
+        }
+    }
+}
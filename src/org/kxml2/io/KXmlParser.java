@@ -32,12 +32,83 @@ import org.xmlpull.v1.*;
 
 public class KXmlParser implements XmlPullParser {
 
+    /** 
+     * Returned by next() and nextToken() for feed input if the next
+     * event is not complete yet. The parser state is left unchanged;
+     * the call can be repeated after more input was fed. */
+
+    public static final int NEED_INPUT = 11;
+
     private Object location;
+
+    /** The configuration generation of the pool the parser came from */
+
+    int generation;
+
 	static final private String UNEXPECTED_EOF = "Unexpected EOF";
     static final private String ILLEGAL_TYPE = "Wrong event type";
+    static final private int CHECKPOINT = 0x4b584331; // "KXC1"
+    static final private IOException NEED_MORE =
+        new IOException("more input needed");
     static final private int LEGACY = 999;
     static final private int XML_DECL = 998;
 
+    // char classes for chars below 128, see charClass()
+
+    static final private int NAME_START = 1;
+    static final private int NAME_CHAR = 2;
+    static final private int ENTITY_CHAR = 4;
+    static final private byte[] CHAR_CLASS = new byte[128];
+
+    static {
+        for (int c = 'a'; c <= 'z'; c++) {
+            CHAR_CLASS[c] = NAME_START | NAME_CHAR | ENTITY_CHAR;
+            CHAR_CLASS[c - 'a' + 'A'] = NAME_START | NAME_CHAR | ENTITY_CHAR;
+        }
+        for (int c = '0'; c <= '9'; c++)
+            CHAR_CLASS[c] = NAME_CHAR | ENTITY_CHAR;
+        CHAR_CLASS['_'] = NAME_START | NAME_CHAR | ENTITY_CHAR;
+        CHAR_CLASS[':'] = NAME_START | NAME_CHAR;
+        CHAR_CLASS['-'] = NAME_CHAR | ENTITY_CHAR;
+        CHAR_CLASS['.'] = NAME_CHAR;
+        CHAR_CLASS['#'] = ENTITY_CHAR;
+    }
+
+    static final private byte[] BASE64 = new byte[128];
+
+    static {
+        String digits =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < BASE64.length; i++)
+            BASE64[i] = -1;
+        for (int i = 0; i < digits.length(); i++)
+            BASE64[digits.charAt(i)] = (byte) i;
+    }
+
+    static final private String[] LIMITS = {
+        "max-depth",
+        "max-attributes",
+        "max-name-length",
+        "max-text-length",
+        "max-entity-expansion",
+        "max-total-chars" };
+    static final private int MAX_DEPTH = 0;
+    static final private int MAX_ATTRIBUTES = 1;
+    static final private int MAX_NAME_LENGTH = 2;
+    static final private int MAX_TEXT_LENGTH = 3;
+    static final private int MAX_ENTITY_EXPANSION = 4;
+    static final private int MAX_TOTAL_CHARS = 5;
+    static final private int BUF_SIZE =
+        Runtime.getRuntime().freeMemory() >= 1048576 ? 8192 : 128;
+
+    // input sources
+
+    static final private int READER = 0;
+    static final private int UTF_8 = 1;
+    static final private int ISO_8859_1 = 2;
+    static final private int CHARS = 3;
+    static final private int STRING = 4;
+
     // general
 
     private String version;
@@ -45,24 +116,101 @@ public class KXmlParser implements XmlPullParser {
 
     private boolean processNsp;
     private boolean relaxed;
+    private boolean interned;
+    private SymbolTable symbols = new SymbolTable(false);
     private Hashtable entityMap;
+    private boolean customEntities;
+
+    /** 
+     * Resource limits, indexed by the MAX_ constants; Integer.MAX_VALUE
+     * if not set. Exceeding a limit is fatal, also in relaxed mode */
+
+    private int[] limits = {
+        Integer.MAX_VALUE,
+        Integer.MAX_VALUE,
+        Integer.MAX_VALUE,
+        Integer.MAX_VALUE,
+        Integer.MAX_VALUE,
+        Integer.MAX_VALUE };
+    private int entityChars;
+
+    /** 
+     * Maximum length of the text of a TEXT event; longer text and CDATA
+     * sections are split into several TEXT events. Integer.MAX_VALUE
+     * if not set */
+
+    private int textChunk = Integer.MAX_VALUE;
+
+    /** true while the rest of a split CDATA section is pending */
+
+    private boolean inCdata;
     private int depth;
     private String[] elementStack = new String[16];
     private String[] nspStack = new String[8];
     private int[] nspCounts = new int[4];
+    private NamespaceIndex nspIndex = new NamespaceIndex(0);
 
     // source
 
+    private int source;
     private Reader reader;
     private String encoding;
     private char[] srcBuf;
 
+    /** 
+     * Byte input for UTF-8 and ISO-8859-1, decoded directly into srcBuf
+     * instead of going through an InputStreamReader */
+
+    private InputStream in;
+    private byte[] byteBuf;
+    private int bytePos;
+    private int byteCount;
+
+    /** Number of input bytes preceding byteBuf[0] */
+
+    private long byteBase;
+
+    private String str;
+    private int strPos;
+
+    /** true while more input may be fed to the parser */
+
+    private boolean feedOpen;
+
+    /** 
+     * The parser's own buffers while srcBuf or byteBuf point to an
+     * array supplied by the caller */
+
+    private char[] ownSrcBuf;
+    private byte[] ownByteBuf;
+
     private int srcPos;
     private int srcCount;
 
+    /** Number of input chars preceding srcBuf[0] */
+
+    private long srcBase;
+
+    /** 
+     * Char offset of the start of the current event, and its byte
+     * offset, or -1 if not computed yet */
+
+    private long eventStart;
+    private long eventStartBytes;
+
     private int line;
     private int column;
 
+    /** 
+     * Without position tracking, line and column are computed on demand
+     * by scanning srcBuf from srcStart, where the position is known */
+
+    private boolean trackPosition = true;
+    private int srcStart;
+    private int startLine;
+    private int startColumn;
+    private boolean startCR;
+
     // txtbuffer
 
     /** Target buffer for storing incoming text (including aggregated resolved entities) */
@@ -81,6 +229,14 @@ public class KXmlParser implements XmlPullParser {
     private boolean degenerated;
     private int attributeCount;
     private String[] attributes = new String[16];
+
+    private AttributeTable attrTable = new AttributeTable();
+
+    /** 
+     * Start and length of the attribute values in txtBuf; the value
+     * Strings are only created when requested */
+
+    private int[] attrValues = new int[8];
 //    private int stackMismatch = 0;
     private String error;
 
@@ -96,11 +252,10 @@ public class KXmlParser implements XmlPullParser {
     private boolean token;
 
     public KXmlParser() {
-        srcBuf =
-            new char[Runtime.getRuntime().freeMemory() >= 1048576 ? 8192 : 128];
+        srcBuf = new char[BUF_SIZE];
     }
 
-    private final boolean isProp(String n1, boolean prop, String n2) {
+    private static final boolean isProp(String n1, boolean prop, String n2) {
         if (!n1.startsWith("http://xmlpull.org/v1/doc/"))
             return false;
         if (prop)
@@ -109,6 +264,30 @@ public class KXmlParser implements XmlPullParser {
             return n1.substring(40).equals(n2);
     }
 
+    /** Returns true if setFeature() accepts the given feature */
+
+    static final boolean isFeature(String name) {
+        return XmlPullParser.FEATURE_PROCESS_NAMESPACES.equals(name)
+            || isProp(name, false, "relaxed")
+            || isProp(name, false, "names-interned")
+            || isProp(name, false, "track-position");
+    }
+
+    /** 
+     * Returns true if the given property configures the parser, as
+     * opposed to the location, which describes the current input */
+
+    static final boolean isConfigProperty(String name) {
+        if (isProp(name, true, "buffer-size")
+            || isProp(name, true, "symbol-table")
+            || isProp(name, true, "text-chunk-size"))
+            return true;
+        for (int i = 0; i < LIMITS.length; i++)
+            if (isProp(name, true, LIMITS[i]))
+                return true;
+        return false;
+    }
+
     private final boolean adjustNsp() throws XmlPullParserException {
 
         boolean any = false;
@@ -117,13 +296,11 @@ public class KXmlParser implements XmlPullParser {
             // * 4 - 4; i >= 0; i -= 4) {
 
             String attrName = attributes[i + 2];
-            int cut = attrName.indexOf(':');
-            String prefix;
+            String[] qname = symbols.split(attrName);
+            String prefix = qname[0];
 
-            if (cut != -1) {
-                prefix = attrName.substring(0, cut);
-                attrName = attrName.substring(cut + 1);
-            }
+            if (prefix != null)
+                attrName = qname[1];
             else if (attrName.equals("xmlns")) {
                 prefix = attrName;
                 attrName = null;
@@ -137,11 +314,16 @@ public class KXmlParser implements XmlPullParser {
             else {
                 int j = (nspCounts[depth]++) << 1;
 
+                if (nspIndex.size() > j >> 1)
+                    nspIndex.update(nspStack, j >> 1);
+
                 nspStack = ensureCapacity(nspStack, j + 2);
+                String value = attributeValue(i);
+
                 nspStack[j] = attrName;
-                nspStack[j + 1] = attributes[i + 3];
+                nspStack[j + 1] = interned ? value.intern() : value;
 
-                if (attrName != null && attributes[i + 3].equals(""))
+                if (attrName != null && value.equals(""))
                     error("illegal empty namespace");
 
                 //  prefixMap = new PrefixMap (prefixMap, attrName, attr.getValue ());
@@ -155,6 +337,13 @@ public class KXmlParser implements XmlPullParser {
                     i,
                     ((--attributeCount) << 2) - i);
 
+                System.arraycopy(
+                    attrValues,
+                    (i >> 1) + 2,
+                    attrValues,
+                    i >> 1,
+                    (attributeCount << 1) - (i >> 1));
+
                 i -= 4;
             }
         }
@@ -163,16 +352,16 @@ public class KXmlParser implements XmlPullParser {
             for (int i = (attributeCount << 2) - 4; i >= 0; i -= 4) {
 
                 String attrName = attributes[i + 2];
-                int cut = attrName.indexOf(':');
+                String[] qname = symbols.split(attrName);
 
-                if (cut == 0 && !relaxed)
+                if ("".equals(qname[0]) && !relaxed)
                     throw new RuntimeException(
                         "illegal attribute name: " + attrName + " at " + this);
 
-                else if (cut != -1) {
-                    String attrPrefix = attrName.substring(0, cut);
+                else if (qname[0] != null) {
+                    String attrPrefix = qname[0];
 
-                    attrName = attrName.substring(cut + 1);
+                    attrName = qname[1];
 
                     String attrNs = getNamespace(attrPrefix);
 
@@ -183,31 +372,25 @@ public class KXmlParser implements XmlPullParser {
                     attributes[i] = attrNs;
                     attributes[i + 1] = attrPrefix;
                     attributes[i + 2] = attrName;
-
-                    /*
-                                        if (!relaxed) {
-                                            for (int j = (attributeCount << 2) - 4; j > i; j -= 4)
-                                                if (attrName.equals(attributes[j + 2])
-                                                    && attrNs.equals(attributes[j]))
-                                                    exception(
-                                                        "Duplicate Attribute: {"
-                                                            + attrNs
-                                                            + "}"
-                                                            + attrName);
-                                        }
-                        */
                 }
             }
+
+            if (!relaxed)
+                attrTable.checkDuplicates(
+                    attributes,
+                    attributeCount,
+                    true,
+                    this);
         }
 
-        int cut = name.indexOf(':');
+        String[] qname = symbols.split(name);
 
-        if (cut == 0)
+        if ("".equals(qname[0]))
             error("illegal tag name: " + name);
 
-        if (cut != -1) {
-            prefix = name.substring(0, cut);
-            name = name.substring(cut + 1);
+        if (qname[0] != null) {
+            prefix = qname[0];
+            name = qname[1];
         }
 
         this.namespace = getNamespace(prefix);
@@ -229,6 +412,28 @@ public class KXmlParser implements XmlPullParser {
         return bigger;
     }
 
+    private final int[] ensureCapacity(int[] arr, int required) {
+        if (arr.length >= required)
+            return arr;
+        int[] bigger = new int[required + 8];
+        System.arraycopy(arr, 0, bigger, 0, arr.length);
+        return bigger;
+    }
+
+    /** 
+     * Returns the value of the attribute at position i of the attributes
+     * array, creating the String from txtBuf on first access */
+
+    private final String attributeValue(int i) {
+        String value = attributes[i + 3];
+        if (value == null) {
+            int j = i >> 1;
+            value = new String(txtBuf, attrValues[j], attrValues[j + 1]);
+            attributes[i + 3] = value;
+        }
+        return value;
+    }
+
     private final void error(String desc) throws XmlPullParserException {
         if (relaxed) {
             if (error == null)
@@ -245,18 +450,27 @@ public class KXmlParser implements XmlPullParser {
             null);
     }
 
+    private final void limitExceeded(int limit)
+        throws XmlPullParserException {
+        exception(LIMITS[limit] + " exceeded: " + limits[limit]);
+    }
+
     /** 
      * common base for next and nextToken. Clears the state, except from 
      * txtPos and whitespace. Does not set the type variable */
 
     private final void nextImpl() throws IOException, XmlPullParserException {
 
-        if (reader == null)
+        if (reader == null && source == READER)
             exception("No Input specified");
 
         if (type == END_TAG)
             depth--;
 
+        if (srcBase + srcPos - peekCount > limits[MAX_TOTAL_CHARS]
+            && limits[MAX_TOTAL_CHARS] != Integer.MAX_VALUE)
+            limitExceeded(MAX_TOTAL_CHARS);
+
         while (true) {
             attributeCount = -1;
 
@@ -319,7 +533,7 @@ public class KXmlParser implements XmlPullParser {
                     return;
 
                 case TEXT :
-                    pushText('<', !token);
+                    pushText('<', !token, textChunk);
                     if (depth == 0) {
                         if (isWhitespace)
                             type = IGNORABLE_WHITESPACE;
@@ -333,6 +547,7 @@ public class KXmlParser implements XmlPullParser {
                     type = parseLegacy(token);
                     if (type != XML_DECL)
                         return;
+                    startEvent();
             }
         }
     }
@@ -340,6 +555,9 @@ public class KXmlParser implements XmlPullParser {
     private final int parseLegacy(boolean push)
         throws IOException, XmlPullParserException {
 
+        if (inCdata)
+            return pushCdata();
+
         String req = "";
         int term;
         int result;
@@ -361,6 +579,8 @@ public class KXmlParser implements XmlPullParser {
 
                 if ((peek(0) == 'l' || peek(0) == 'L') && peek(1) <= ' ') {
 
+                    updatePosition();
+
                     if (line != 1 || column > 4)
                         error("PI must not start with xml");
 
@@ -369,19 +589,19 @@ public class KXmlParser implements XmlPullParser {
                     if (attributeCount < 1 || !"version".equals(attributes[2]))
                         error("version expected");
 
-                    version = attributes[3];
+                    version = attributeValue(0);
 
                     int pos = 1;
 
                     if (pos < attributeCount
                         && "encoding".equals(attributes[2 + 4])) {
-                        encoding = attributes[3 + 4];
+                        encoding = attributeValue(4);
                         pos++;
                     }
 
                     if (pos < attributeCount
                         && "standalone".equals(attributes[4 * pos + 2])) {
-                        String st = attributes[3 + 4 * pos];
+                        String st = attributeValue(4 * pos);
                         if ("yes".equals(st))
                             standalone = new Boolean(true);
                         else if ("no".equals(st))
@@ -436,6 +656,8 @@ public class KXmlParser implements XmlPullParser {
 
         if (result == DOCDECL)
             parseDoctype(push);
+        else if (result == CDSECT)
+            return pushCdata();
         else {
             while (true) {
                 c = read();
@@ -468,6 +690,40 @@ public class KXmlParser implements XmlPullParser {
         return result;
     }
 
+    /** 
+     * Pushes the content of a CDATA section up to the closing "]]>",
+     * stopping early once textChunk chars are in txtBuf; the rest of the
+     * section is then returned by the following calls. A chunk only
+     * ends where the section cannot end, so no empty chunk is left. */
+
+    private final int pushCdata()
+        throws IOException, XmlPullParserException {
+
+        inCdata = false;
+
+        while (true) {
+            if (txtPos >= textChunk && (peek(0) != ']' || peek(1) != ']')) {
+                inCdata = true;
+                return CDSECT;
+            }
+
+            int c = read();
+
+            if (c == -1) {
+                error(UNEXPECTED_EOF);
+                return COMMENT;
+            }
+
+            if (c == ']' && peek(0) == ']' && peek(1) == '>') {
+                read();
+                read();
+                return CDSECT;
+            }
+
+            push(c);
+        }
+    }
+
     /** precondition: &lt! consumed */
 
     private final void parseDoctype(boolean push)
@@ -552,7 +808,10 @@ public class KXmlParser implements XmlPullParser {
         }
     }
 
-    private final int peekType() throws IOException {
+    private final int peekType()
+        throws IOException, XmlPullParserException {
+        if (inCdata)
+            return LEGACY;
         switch (peek(0)) {
             case -1 :
                 return END_DOCUMENT;
@@ -585,19 +844,115 @@ public class KXmlParser implements XmlPullParser {
     }
     */
 
-    private final void push(int c) {
+    private final void push(int c) throws XmlPullParserException {
 
         isWhitespace &= c <= ' ';
 
-        if (txtPos == txtBuf.length) {
-            char[] bigger = new char[txtPos * 4 / 3 + 4];
-            System.arraycopy(txtBuf, 0, bigger, 0, txtPos);
-            txtBuf = bigger;
-        }
+        if (txtPos == txtBuf.length)
+            growTxtBuf(txtPos + 1);
 
         txtBuf[txtPos++] = (char) c;
     }
 
+    private final void growTxtBuf(int required)
+        throws XmlPullParserException {
+
+        // txtBuf never exceeds the text limit, so any event exceeding
+        // it ends up here
+
+        int max = limits[MAX_TEXT_LENGTH];
+        if (required > max)
+            limitExceeded(MAX_TEXT_LENGTH);
+
+        int size = required * 4 / 3 + 4;
+        char[] bigger = new char[size > max || size < 0 ? max : size];
+        System.arraycopy(txtBuf, 0, bigger, 0, txtPos);
+        txtBuf = bigger;
+    }
+
+    /** 
+     * Copies the chars from srcBuf to txtBuf up to the next char that
+     * needs special treatment (markup, entities, line end normalization
+     * or the delimiter), updating line, column and isWhitespace once
+     * for the whole run. Returns the number of chars copied. */
+
+    private final int pushRun(int delimiter, int max)
+        throws XmlPullParserException {
+
+        if (peekCount != 0 || wasCR)
+            return 0;
+
+        char[] buf = srcBuf;
+        int start = srcPos;
+        int end = srcCount;
+        int pos = start;
+        int lineStart = -1;
+
+        if (end - start > max - txtPos)
+            end = start + max - txtPos;
+
+        boolean ws = isWhitespace;
+
+        while (pos < end) {
+            int c = buf[pos];
+
+            if (c == '<'
+                || c == '&'
+                || c == ']'
+                || c == '>'
+                || c == '\r'
+                || c == delimiter)
+                break;
+
+            if (c <= ' ') {
+                if (delimiter == ' ')
+                    break;
+                if (c == '\n') {
+                    if (type == START_TAG)
+                        break;
+                    line++;
+                    lineStart = pos;
+                }
+            }
+            else
+                ws = false;
+
+            pos++;
+        }
+
+        int len = pos - start;
+
+        if (len > 0) {
+            if (txtPos + len > txtBuf.length)
+                growTxtBuf(txtPos + len);
+
+            System.arraycopy(buf, start, txtBuf, txtPos, len);
+            txtPos += len;
+            srcPos = pos;
+            isWhitespace = ws;
+            if (trackPosition)
+                column = lineStart == -1 ? column + len : pos - lineStart;
+        }
+        return len;
+    }
+
+    /** 
+     * Returns true if the char is in the given class. Chars from 128
+     * are looked up by range; -1 is in no class */
+
+    private static final boolean is(int cls, int c) {
+        if ((c & 0xffffff80) == 0)
+            return (CHAR_CLASS[c] & cls) != 0;
+        switch (cls) {
+            case NAME_START :
+                return c >= 0x0c0;
+            case NAME_CHAR :
+                return c >= 0x0b7;
+            default :
+                return c >= 128;
+        }
+    }
+
     /** Sets name and attributes */
 
     private final void parseStartTag(boolean xmldecl)
@@ -649,9 +1004,13 @@ public class KXmlParser implements XmlPullParser {
                 break;
             }
 
+            if (attributeCount == limits[MAX_ATTRIBUTES])
+                limitExceeded(MAX_ATTRIBUTES);
+
             int i = (attributeCount++) << 2;
 
             attributes = ensureCapacity(attributes, i + 4);
+            attrValues = ensureCapacity(attrValues, (i >> 1) + 2);
 
             attributes[i++] = "";
             attributes[i++] = null;
@@ -679,17 +1038,23 @@ public class KXmlParser implements XmlPullParser {
 				else 
 					read();
 				
+                // the value stays in txtBuf until it is requested
+
                 int p = txtPos;
-                pushText(delimiter, true);
+                pushText(delimiter, true, Integer.MAX_VALUE);
 
-                attributes[i] = get(p);
-                txtPos = p;
+                attributes[i] = null;
+                attrValues[(i - 3) >> 1] = p;
+                attrValues[((i - 3) >> 1) + 1] = txtPos - p;
 
                 if (delimiter != ' ')
                     read(); // skip endquote
             }
         }
 
+        if (depth == limits[MAX_DEPTH])
+            limitExceeded(MAX_DEPTH);
+
         int sp = depth++ << 2;
 
         elementStack = ensureCapacity(elementStack, sp + 4);
@@ -703,16 +1068,9 @@ public class KXmlParser implements XmlPullParser {
 
         nspCounts[depth] = nspCounts[depth - 1];
 
-        /*
-        		if(!relaxed){
-                for (int i = attributeCount - 1; i > 0; i--) {
-                    for (int j = 0; j < i; j++) {
-                        if (getAttributeName(i).equals(getAttributeName(j)))
-                            exception("Duplicate Attribute: " + getAttributeName(i));
-                    }
-                }
-        		}
-        */
+        if (!relaxed)
+            attrTable.checkDuplicates(attributes, attributeCount, false, this);
+
         if (processNsp)
             adjustNsp();
         else
@@ -741,13 +1099,7 @@ public class KXmlParser implements XmlPullParser {
               read();
               break;
             }
-            if (c < 128
-                && (c < '0' || c > '9')
-                && (c < 'a' || c > 'z')
-                && (c < 'A' || c > 'Z')
-                && c != '_'
-                && c != '-'
-                && c != '#') {
+            if (!is(ENTITY_CHAR, c)) {
             	if(!relaxed){
             		error("unterminated entity ref");
             	}
@@ -763,21 +1115,49 @@ public class KXmlParser implements XmlPullParser {
             push(read());
         }
 
-        String code = get(pos);
-        txtPos = pos - 1;
+        int len = txtPos - pos;
+
         if (token && type == ENTITY_REF){
-            name = code;
+            name = get(pos);
         }
 
-        if (code.charAt(0) == '#') {
-            int c =
-                (code.charAt(1) == 'x'
-                    ? Integer.parseInt(code.substring(2), 16)
-                    : Integer.parseInt(code.substring(1)));
-            push(c);
+        if (++entityChars > limits[MAX_ENTITY_EXPANSION])
+            limitExceeded(MAX_ENTITY_EXPANSION);
+
+        // character references and the predefined entities are decoded
+        // from txtBuf, without creating a string for the name
+
+        int c = len == 0
+            ? -1
+            : txtBuf[pos] == '#'
+            ? charRef(pos + 1, len - 1)
+            : customEntities
+            ? -1
+            : predefined(pos, len);
+
+        if (c != -1) {
+            txtPos = pos - 1;
+            unresolved = false;
+            if (c >= 0x10000) {
+                c -= 0x10000;
+                push(0x0d800 | (c >> 10));
+                push(0x0dc00 | (c & 0x3ff));
+            }
+            else
+                push(c);
+            return;
+        }
+
+        String code = get(pos);
+
+        if (code.startsWith("#")) {
+            error("illegal character reference: &" + code + ";");
+            push(';');
             return;
         }
 
+        txtPos = pos - 1;
+
         String result = (String) entityMap.get(code);
 
         unresolved = result == null;
@@ -787,6 +1167,10 @@ public class KXmlParser implements XmlPullParser {
                 error("unresolved: &" + code + ";");
         }
         else {
+            entityChars += result.length() - 1;
+            if (entityChars > limits[MAX_ENTITY_EXPANSION])
+                limitExceeded(MAX_ENTITY_EXPANSION);
+
             for (int i = 0; i < result.length(); i++)
                 push(result.charAt(i));
         }
@@ -796,15 +1180,21 @@ public class KXmlParser implements XmlPullParser {
     '<': parse to any token (for nextToken ())
     '"': parse to quote
     ' ': parse to whitespace or '>'
+    Stops early once max chars are in txtBuf.
     */
 
-    private final void pushText(int delimiter, boolean resolveEntities)
+    private final void pushText(
+        int delimiter,
+        boolean resolveEntities,
+        int max)
         throws IOException, XmlPullParserException {
 
         int next = peek(0);
         int cbrCount = 0;
 
-        while (next != -1 && next != delimiter) { // covers eof, '<', '"'
+        // covers eof, '<', '"'
+
+        while (next != -1 && next != delimiter && txtPos < max) {
 
             if (delimiter == ' ')
                 if (next <= ' ' || next == '>')
@@ -831,6 +1221,12 @@ public class KXmlParser implements XmlPullParser {
             else
                 cbrCount = 0;
 
+            if (pushRun(delimiter, max) > 0)
+                cbrCount = 0;
+
+            if (delimiter == '<' && fedTextEnds())
+                break;
+
             next = peek(0);
         }
     }
@@ -842,11 +1238,25 @@ public class KXmlParser implements XmlPullParser {
             error("expected: '" + c + "' actual: '" + ((char) a) + "'");
     }
 
-    private final int read() throws IOException {
+    private final int read() throws IOException, XmlPullParserException {
         int result;
 
-        if (peekCount == 0)
+        if (peekCount == 0) {
+
+            // take the char directly from srcBuf, bypassing the peek
+            // buffer, unless line ends need to be normalized
+
+            if (srcPos < srcCount
+                && (result = srcBuf[srcPos]) != '\r'
+                && result != '\n') {
+                srcPos++;
+                wasCR = false;
+                if (trackPosition)
+                    column++;
+                return result;
+            }
             result = peek(0);
+        }
         else {
             result = peek[0];
             peek[0] = peek[1];
@@ -857,37 +1267,139 @@ public class KXmlParser implements XmlPullParser {
         //		}
         peekCount--;
 
-        column++;
+        if (trackPosition) {
+            column++;
 
-        if (result == '\n') {
+            if (result == '\n') {
 
-            line++;
-            column = 1;
+                line++;
+                column = 1;
+            }
+        }
+        else if (result == -1) {
+
+            // reading the end counts as a column, as with tracking
+
+            int end = srcPos - peekCount;
+            if (end > srcCount)
+                end = srcCount;
+            if (end > srcStart) {
+                startCR = scanPosition(end);
+                startLine = line;
+                startColumn = column;
+                srcStart = end;
+            }
+            startColumn++;
         }
 
         return result;
     }
 
+    /** 
+     * Computes line and column for the given index in srcBuf from the
+     * position at srcStart. Returns true if the char before the given
+     * index is a CR. */
+
+    private final boolean scanPosition(int end) {
+
+        char[] buf = srcBuf;
+        int l = startLine;
+        int col = startColumn;
+        boolean cr = startCR;
+
+        for (int i = srcStart; i < end; i++) {
+            int c = buf[i];
+            if (c == '\n') {
+                if (!cr) {
+                    l++;
+                    col = 1;
+                }
+                cr = false;
+            }
+            else if (c == '\r') {
+                l++;
+                col = 1;
+                cr = true;
+            }
+            else {
+                col++;
+                cr = false;
+            }
+        }
+
+        line = l;
+        column = col;
+        return cr;
+    }
+
+    /** Brings line and column up to date if positions are not tracked */
+
+    private final void updatePosition() {
+        if (!trackPosition) {
+            int end = srcPos - peekCount;
+            if (end > srcCount)
+                end = srcCount;
+            scanPosition(end < srcStart ? srcStart : end);
+        }
+    }
+
     /** Does never read more than needed */
 
-    private final int peek(int pos) throws IOException {
+    private final int peek(int pos)
+        throws IOException, XmlPullParserException {
 
         while (pos >= peekCount) {
 
             int nw;
 
-            if (srcBuf.length <= 1)
-                nw = reader.read();
-            else if (srcPos < srcCount)
+            if (srcPos < srcCount)
                 nw = srcBuf[srcPos++];
+            else if (source == CHARS) {
+                nw = -1;
+                srcPos = srcCount + 1;
+            }
+            else if (feedOpen)
+                throw NEED_MORE;
             else {
-                srcCount = reader.read(srcBuf, 0, srcBuf.length);
-                if (srcCount <= 0)
-                    nw = -1;
+                int keep = 0;
+
+                if (!trackPosition && srcCount > 0) {
+
+                    // keep the last chars, which may not be consumed yet,
+                    // so that the position can be computed from srcBuf
+
+                    keep = srcCount < 3 ? srcCount : 3;
+                    int from = srcCount - keep;
+                    if (srcStart <= from) {
+                        startCR = scanPosition(from);
+                        startLine = line;
+                        startColumn = column;
+                        srcStart = 0;
+                    }
+                    else
+                        srcStart -= from;
+                    System.arraycopy(srcBuf, from, srcBuf, 0, keep);
+                }
                 else
-                    nw = srcBuf[0];
+                    srcStart = 0;
+                pinEventStart();
+                srcBase += srcCount - keep;
+
+                int cnt = fill(keep);
+                if (cnt <= 0) {
+                    nw = -1;
+                    srcCount = keep;
+                    srcPos = keep + 1;
+                }
+                else {
+                    nw = srcBuf[keep];
+                    srcCount = keep + cnt;
+                    srcPos = keep + 1;
+                }
 
-                srcPos = 1;
+                if (srcBase + srcCount > limits[MAX_TOTAL_CHARS]
+                    && limits[MAX_TOTAL_CHARS] != Integer.MAX_VALUE)
+                    limitExceeded(MAX_TOTAL_CHARS);
             }
 
             if (nw == '\r') {
@@ -909,92 +1421,1170 @@ public class KXmlParser implements XmlPullParser {
         return peek[pos];
     }
 
-    private final String readName()
-        throws IOException, XmlPullParserException {
-
-        int pos = txtPos;
-        int c = peek(0);
-        if ((c < 'a' || c > 'z')
-            && (c < 'A' || c > 'Z')
-            && c != '_'
-            && c != ':'
-            && c < 0x0c0
-            && !relaxed)
-            error("name expected");
+    /** 
+     * Fills srcBuf from the given index with chars from the input
+     * source, returns the number of chars read or -1 at the end */
+
+    private final int fill(int off) throws IOException {
+        switch (source) {
+            case READER :
+                return reader.read(srcBuf, off, srcBuf.length - off);
+
+            case STRING :
+                int len = str.length() - strPos;
+                if (len <= 0)
+                    return -1;
+                if (len > srcBuf.length - off)
+                    len = srcBuf.length - off;
+                str.getChars(strPos, strPos + len, srcBuf, off);
+                strPos += len;
+                return len;
 
-        do {
-            push(read());
-            c = peek(0);
+            default :
+                return decode(off);
         }
-        while ((c >= 'a' && c <= 'z')
-            || (c >= 'A' && c <= 'Z')
-            || (c >= '0' && c <= '9')
-            || c == '_'
-            || c == '-'
-            || c == ':'
-            || c == '.'
-            || c >= 0x0b7);
-
-        String result = get(pos);
-        txtPos = pos;
-        return result;
     }
 
-    private final void skip() throws IOException {
+    /** 
+     * Decodes the next chunk of byte input into srcBuf from the given
+     * index and returns the number of chars decoded, or -1 at the end
+     * of the input. Incomplete UTF-8 sequences at the end of byteBuf are
+     * kept for the next call; malformed ones, including overlong forms,
+     * surrogates and code points above U+10FFFF, are replaced by U+FFFD
+     * like InputStreamReader does. */
 
-        while (true) {
-            int c = peek(0);
-            if (c > ' ' || c == -1)
-                break;
-            read();
-        }
-    }
+    private final int decode(int off) throws IOException {
 
-    //  public part starts here...
+        byte[] buf = byteBuf;
+        char[] dst = srcBuf;
+        int max = dst.length - 1; // room for a surrogate pair
+        int n = off;
 
-    public void setInput(Reader reader) throws XmlPullParserException {
-        this.reader = reader;
+        do {
+            if (byteCount - bytePos < 4 && in != null) {
+                int left = byteCount - bytePos;
+                System.arraycopy(buf, bytePos, buf, 0, left);
+                byteBase += bytePos;
+                bytePos = 0;
+                byteCount = left;
+
+                int cnt = in.read(buf, left, buf.length - left);
+                if (cnt <= 0)
+                    in = null;
+                else
+                    byteCount += cnt;
+            }
 
-        line = 1;
-        column = 0;
-        type = START_DOCUMENT;
-        name = null;
-        namespace = null;
-        degenerated = false;
-        attributeCount = -1;
-        encoding = null;
-        version = null;
-        standalone = null;
+            int pos = bytePos;
+            int end = byteCount;
 
-        if (reader == null)
-            return;
+            if (pos == end)
+                return -1;
 
-        srcPos = 0;
-        srcCount = 0;
-        peekCount = 0;
-        depth = 0;
+            if (source == ISO_8859_1) {
+                while (pos < end && n < dst.length)
+                    dst[n++] = (char) (buf[pos++] & 0x0ff);
+            }
+            else {
+                while (pos < end && n < max) {
+                    int c = buf[pos];
 
-        entityMap = new Hashtable();
-        entityMap.put("amp", "&");
-        entityMap.put("apos", "'");
-        entityMap.put("gt", ">");
-        entityMap.put("lt", "<");
-        entityMap.put("quot", "\"");
-    }
+                    if (c >= 0) {
+                        dst[n++] = (char) c;
+                        pos++;
+                        continue;
+                    }
 
-    public void setInput(InputStream is, String _enc)
-        throws XmlPullParserException {
+                    int need;
+                    c &= 0x0ff;
 
-        srcPos = 0;
-        srcCount = 0;
-        String enc = _enc;
+                    // range of the second byte; excludes overlong forms
+                    // and code points above U+10FFFF
 
-        if (is == null)
-            throw new IllegalArgumentException();
+                    int lo = 0x080;
+                    int hi = 0x0bf;
 
-        try {
+                    if (c >= 0x0c2 && c <= 0x0df) {
+                        need = 1;
+                        c &= 0x01f;
+                    }
+                    else if (c >= 0x0e0 && c <= 0x0ef) {
+                        need = 2;
+                        if (c == 0x0e0)
+                            lo = 0x0a0;
+                        c &= 0x0f;
+                    }
+                    else if (c >= 0x0f0 && c <= 0x0f4) {
+                        need = 3;
+                        if (c == 0x0f0)
+                            lo = 0x090;
+                        else if (c == 0x0f4)
+                            hi = 0x08f;
+                        c &= 0x07;
+                    }
+                    else {
+                        dst[n++] = '\ufffd';
+                        pos++;
+                        continue;
+                    }
 
-            if (enc == null) {
+                    if (pos + need >= end && (in != null || feedOpen))
+                        break; // incomplete, wait for more input
+
+                    // a malformed sequence is replaced by one U+FFFD up
+                    // to the first byte that does not fit
+
+                    int i = 1;
+                    while (i <= need && pos + i < end) {
+                        int b = buf[pos + i] & 0x0ff;
+                        if (b < lo || b > hi)
+                            break;
+                        c = (c << 6) | (b & 0x03f);
+                        lo = 0x080;
+                        hi = 0x0bf;
+                        i++;
+                    }
+
+                    // surrogates are replaced as a whole, as by the JDK
+
+                    if (i <= need || (c >= 0x0d800 && c < 0x0e000))
+                        c = 0x0fffd;
+
+                    pos += i;
+
+                    if (c >= 0x10000) {
+                        c -= 0x10000;
+                        dst[n++] = (char) (0x0d800 | (c >> 10));
+                        dst[n++] = (char) (0x0dc00 | (c & 0x03ff));
+                    }
+                    else
+                        dst[n++] = (char) c;
+                }
+            }
+            bytePos = pos;
+        }
+        while (n == off && in != null);
+
+        return n - off;
+    }
+
+    /** 
+     * Returns the code point of the character reference with the given
+     * digits in txtBuf (without "&#"), or -1 if it is not valid or
+     * refers to a surrogate, which can only be part of a pair */
+
+    private final int charRef(int pos, int len) {
+
+        int radix = 10;
+
+        if (len > 0 && txtBuf[pos] == 'x') {
+            radix = 16;
+            pos++;
+            len--;
+        }
+
+        if (len == 0)
+            return -1;
+
+        int c = 0;
+
+        for (int i = pos; i < pos + len; i++) {
+            int d = Character.digit(txtBuf[i], radix);
+            if (d == -1)
+                return -1;
+            c = c * radix + d;
+            if (c > 0x10ffff)
+                return -1;
+        }
+        return c >= 0x0d800 && c < 0x0e000 ? -1 : c;
+    }
+
+    /** 
+     * Returns the char of the predefined entity with the given name in
+     * txtBuf, or -1 if the name is not one of amp, apos, gt, lt, quot */
+
+    private final int predefined(int pos, int len) {
+
+        char[] buf = txtBuf;
+
+        switch (len) {
+            case 2 :
+                if (buf[pos + 1] == 't') {
+                    if (buf[pos] == 'l')
+                        return '<';
+                    if (buf[pos] == 'g')
+                        return '>';
+                }
+                break;
+            case 3 :
+                if (buf[pos] == 'a' && buf[pos + 1] == 'm' && buf[pos + 2] == 'p')
+                    return '&';
+                break;
+            case 4 :
+                if (buf[pos] == 'a'
+                    && buf[pos + 1] == 'p'
+                    && buf[pos + 2] == 'o'
+                    && buf[pos + 3] == 's')
+                    return '\'';
+                if (buf[pos] == 'q'
+                    && buf[pos + 1] == 'u'
+                    && buf[pos + 2] == 'o'
+                    && buf[pos + 3] == 't')
+                    return '"';
+                break;
+        }
+        return -1;
+    }
+
+    private final String readName()
+        throws IOException, XmlPullParserException {
+
+        int pos = txtPos;
+        int c = peek(0);
+        if (!is(NAME_START, c) && !relaxed)
+            error("name expected");
+
+        int max = limits[MAX_NAME_LENGTH];
+
+        // if the name ends inside srcBuf, intern it from there instead
+        // of pushing it char by char; names contain no line ends
+
+        if (peekCount == 1 && c > ' ' && srcBuf[srcPos - 1] == c) {
+            char[] buf = srcBuf;
+            int start = srcPos - 1;
+            int end = srcCount;
+            int i = srcPos;
+
+            while (i < end && is(NAME_CHAR, buf[i]))
+                i++;
+
+            if (i < end) {
+                int len = i - start;
+                if (len > max)
+                    limitExceeded(MAX_NAME_LENGTH);
+                isWhitespace = false;
+                peekCount = 0;
+                wasCR = false;
+                srcPos = i;
+                if (trackPosition)
+                    column += len;
+                return symbols.intern(buf, start, len);
+            }
+        }
+
+        max += pos;
+
+        do {
+            if (txtPos == max)
+                limitExceeded(MAX_NAME_LENGTH);
+            push(read());
+            c = peek(0);
+        }
+        while (is(NAME_CHAR, c));
+
+        String result = symbols.intern(txtBuf, pos, txtPos - pos);
+        txtPos = pos;
+        return result;
+    }
+
+    private final void skip() throws IOException, XmlPullParserException {
+
+        while (true) {
+            int c = peek(0);
+            if (c > ' ' || c == -1)
+                break;
+            read();
+        }
+    }
+
+    /** 
+     * Skips the content of the current start tag up to its end tag,
+     * which is returned by the following call to next(). In relaxed
+     * mode, only nesting, quotes, comments, CDATA sections and PIs are
+     * recognized, so no names, attributes or text are built for the
+     * skipped content. In strict mode, only the text is skipped, see
+     * skipText(); tags are parsed as usual, so that names, attributes
+     * and namespace prefixes are checked. */
+
+    final void skipContent() throws IOException, XmlPullParserException {
+
+        if (!relaxed) {
+            int target = depth;
+
+            while (true) {
+                if (!degenerated && !inCdata) {
+                    skipText();
+
+                    if (peek(0) == -1) {
+                        error(UNEXPECTED_EOF);
+                        return;
+                    }
+
+                    if (peek(1) == '/'
+                        && (type == END_TAG ? depth - 1 : depth) == target)
+                        return;
+                }
+                nextMarkup();
+            }
+        }
+
+        int level = 1;
+
+        while (true) {
+            skipText();
+
+            if (peek(0) == -1) {
+                error(UNEXPECTED_EOF);
+                return;
+            }
+
+            switch (peek(1)) {
+                case '/' :
+                    if (--level == 0)
+                        return;
+                    read();
+                    read();
+                    skipTag();
+                    break;
+
+                case '!' :
+                case '?' :
+                    do {
+                        txtPos = 0;
+                        parseLegacy(false);
+                    }
+                    while (inCdata);
+                    break;
+
+                default :
+                    read();
+                    if (skipTag())
+                        level++;
+            }
+        }
+    }
+
+    /** 
+     * Parses the markup at the current position as the next event,
+     * after the preceding text was skipped */
+
+    private final void nextMarkup()
+        throws IOException, XmlPullParserException {
+
+        txtPos = 0;
+        isWhitespace = true;
+        token = false;
+        startEvent();
+        nextImpl();
+    }
+
+    /** 
+     * Skips text up to the next '<' or the end of the input, scanning
+     * srcBuf directly where possible. Entities are not resolved; in
+     * strict mode, entity references are checked as in next() and ']]>'
+     * is rejected. */
+
+    private final void skipText() throws IOException, XmlPullParserException {
+
+        int cbrCount = 0;
+
+        while (true) {
+            if (cbrCount == 0 && peekCount == 0 && srcPos < srcCount) {
+                char[] buf = srcBuf;
+                int start = srcPos;
+                int pos = start;
+                int end = srcCount;
+
+                if (relaxed)
+                    while (pos < end && buf[pos] != '<')
+                        pos++;
+                else
+                    while (pos < end) {
+                        char c = buf[pos];
+                        if (c == '<' || c == '&' || c == ']')
+                            break;
+                        pos++;
+                    }
+
+                if (pos > start) {
+                    if (trackPosition) {
+                        srcStart = start;
+                        startLine = line;
+                        startColumn = column;
+                        startCR = wasCR;
+                        wasCR = scanPosition(pos);
+                    }
+                    else
+                        wasCR = buf[pos - 1] == '\r';
+                    srcPos = pos;
+                }
+            }
+
+            int c = peek(0);
+            if (c == -1 || c == '<')
+                return;
+
+            if (relaxed)
+                read();
+            else if (c == '&') {
+                int top = txtPos;
+                boolean t = token;
+                token = false;
+                pushEntity();
+                token = t;
+                txtPos = top;
+                cbrCount = 0;
+            }
+            else {
+                read();
+                if (c == ']')
+                    cbrCount++;
+                else if (c == '>' && cbrCount >= 2)
+                    error("Illegal: ]]>");
+                else
+                    cbrCount = 0;
+            }
+        }
+    }
+
+    /** 
+     * Skips the rest of a tag including the closing '>'. Returns false
+     * for an empty element tag */
+
+    private final boolean skipTag()
+        throws IOException, XmlPullParserException {
+
+        int quote = 0;
+        int prev = 0;
+
+        while (true) {
+            int c = read();
+
+            if (c == -1) {
+                error(UNEXPECTED_EOF);
+                return false;
+            }
+
+            if (quote != 0) {
+                if (c == quote)
+                    quote = 0;
+            }
+            else if (c == '"' || c == '\'')
+                quote = c;
+            else if (c == '>')
+                return prev != '/';
+
+            prev = c;
+        }
+    }
+
+    //  public part starts here...
+
+    public void setInput(Reader reader) throws XmlPullParserException {
+        releaseBuffers();
+        this.reader = reader;
+        in = null;
+        str = null;
+        source = READER;
+        initState();
+    }
+
+    /** 
+     * Sets the input to the given part of a char array. The array is
+     * parsed in place and must not be modified while parsing. */
+
+    public void setInput(char[] buf, int off, int len)
+        throws XmlPullParserException {
+
+        if (off < 0 || len < 0 || off + len > buf.length)
+            throw new IndexOutOfBoundsException();
+
+        setInput((Reader) null);
+        source = CHARS;
+        initState();
+
+        ownSrcBuf = srcBuf;
+        srcBuf = buf;
+        srcPos = off;
+        srcCount = off + len;
+        srcStart = off;
+        srcBase = -off;
+    }
+
+    /** Sets the input to the given string, without a StringReader */
+
+    public void setInput(String s) throws XmlPullParserException {
+        setInput((Reader) null);
+        str = s;
+        strPos = 0;
+        source = STRING;
+        initState();
+    }
+
+    /** 
+     * Sets the input to the given part of a byte array. If the encoding
+     * is null, it is detected as for setInput(InputStream, String).
+     * UTF-8, US-ASCII and ISO-8859-1 input is decoded from the array
+     * in place; the array must not be modified while parsing. */
+
+    public void setInput(byte[] buf, int off, int len, String enc)
+        throws XmlPullParserException {
+
+        if (off < 0 || len < 0 || off + len > buf.length)
+            throw new IndexOutOfBoundsException();
+
+        ByteArrayInputStream is = new ByteArrayInputStream(buf, off, len);
+        setInput(is, enc);
+
+        if (source == UTF_8 || source == ISO_8859_1) {
+
+            // the bytes kept from encoding detection are the last ones
+            // read from the array
+
+            ownByteBuf = byteBuf;
+            byteBuf = buf;
+            bytePos = off + len - is.available() - byteCount;
+            byteBase = -off;
+            byteCount = off + len;
+            in = null;
+        }
+    }
+
+    /** 
+     * Sets the input to bytes that are passed to feed() as they arrive,
+     * so that a single thread can parse many connections without
+     * blocking. In this mode, next() and nextToken() return NEED_INPUT
+     * instead of waiting for input; the text and attribute values of
+     * the previous event are not available after that. An incomplete
+     * event is parsed again from its start once more input was fed; if
+     * the text-chunk-size property is set, text is returned up to the
+     * end of the input fed so far instead, so long text is parsed once.
+     * skipSubTree(), skipToStartTag() and readBase64() need ended input.
+     * The encoding may be UTF-8, US-ASCII, ISO-8859-1 or null for
+     * UTF-8. */
+
+    public void setFeedInput(String enc) throws XmlPullParserException {
+
+        setInput((Reader) null);
+
+        if (enc == null
+            || enc.equalsIgnoreCase("UTF-8")
+            || enc.equalsIgnoreCase("UTF8")
+            || enc.equalsIgnoreCase("US-ASCII"))
+            source = UTF_8;
+        else if (
+            enc.equalsIgnoreCase("ISO-8859-1")
+                || enc.equalsIgnoreCase("ISO8859_1"))
+            source = ISO_8859_1;
+        else
+            exception("unsupported feed encoding: " + enc);
+
+        if (byteBuf == null)
+            byteBuf = new byte[srcBuf.length];
+
+        bytePos = 0;
+        byteCount = 0;
+        initState();
+        encoding = enc;
+        feedOpen = true;
+    }
+
+    /** 
+     * Passes the next chunk of input to a parser set up with
+     * setFeedInput(). The bytes are copied, incomplete tokens and
+     * multi-byte chars are kept until they are completed. */
+
+    public void feed(byte[] buf, int off, int len)
+        throws XmlPullParserException {
+
+        if (!feedOpen)
+            exception("feed input not set or ended");
+
+        int left = byteCount - bytePos;
+
+        if (left + len > byteBuf.length) {
+            byte[] bigger = new byte[left + len];
+            System.arraycopy(byteBuf, bytePos, bigger, 0, left);
+            byteBuf = bigger;
+        }
+        else
+            System.arraycopy(byteBuf, bytePos, byteBuf, 0, left);
+
+        System.arraycopy(buf, off, byteBuf, left, len);
+        byteBase += bytePos;
+        bytePos = 0;
+        byteCount = left + len;
+
+        decodeFed();
+    }
+
+    /** 
+     * Signals the end of feed input; the remaining events are returned
+     * by next() and nextToken() without NEED_INPUT. */
+
+    public void endInput() throws XmlPullParserException {
+        if (!feedOpen)
+            exception("feed input not set or ended");
+        feedOpen = false;
+        decodeFed();
+    }
+
+    /** Returns true while feed input is set up and not ended */
+
+    final boolean isFeedOpen() {
+        return feedOpen;
+    }
+
+    /** 
+     * Decodes the bytes fed so far, dropping the consumed chars from
+     * srcBuf and growing it when needed. */
+
+    private final void decodeFed() throws XmlPullParserException {
+
+        // keep the last consumed chars for position computation, as
+        // when srcBuf is refilled in peek
+
+        int keep = srcPos < 3 ? srcPos : 3;
+        int from = srcPos - keep;
+
+        if (from > 0) {
+            pinEventStart();
+            if (!trackPosition && srcStart < from) {
+                startCR = scanPosition(from);
+                startLine = line;
+                startColumn = column;
+                srcStart = from;
+            }
+            System.arraycopy(srcBuf, from, srcBuf, 0, srcCount - from);
+            srcCount -= from;
+            srcPos -= from;
+            srcStart -= from;
+            srcBase += from;
+        }
+
+        try {
+            while (bytePos < byteCount) {
+                if (srcCount + 2 > srcBuf.length) {
+                    char[] bigger = new char[srcBuf.length * 2];
+                    System.arraycopy(srcBuf, 0, bigger, 0, srcCount);
+                    srcBuf = bigger;
+                }
+                int cnt = decode(srcCount);
+                if (cnt <= 0)
+                    break;
+                srcCount += cnt;
+            }
+        }
+        catch (IOException e) {
+            throw new XmlPullParserException(e.toString(), this, e);
+        }
+
+        if (srcBase + srcCount > limits[MAX_TOTAL_CHARS]
+            && limits[MAX_TOTAL_CHARS] != Integer.MAX_VALUE)
+            limitExceeded(MAX_TOTAL_CHARS);
+    }
+
+    /** 
+     * Returns the next event or token for feed input, or NEED_INPUT,
+     * restoring the state from before the call, if the buffered input
+     * ends before the event is complete. */
+
+    private final int nextFed(boolean token)
+        throws IOException, XmlPullParserException {
+
+        int pos = srcPos;
+        int count = peekCount;
+        int peek0 = peek[0];
+        int peek1 = peek[1];
+        boolean cr = wasCR;
+        int l = line;
+        int col = column;
+        int t = type;
+        int d = depth;
+        boolean dg = degenerated;
+        String err = error;
+        int ec = entityChars;
+        boolean cd = inCdata;
+
+        try {
+            return token ? nextTokenEvent() : nextEvent();
+        }
+        catch (IOException e) {
+            if (e != NEED_MORE)
+                throw e;
+
+            srcPos = pos;
+            peekCount = count;
+            peek[0] = peek0;
+            peek[1] = peek1;
+            wasCR = cr;
+            line = l;
+            column = col;
+            type = t;
+            depth = d;
+            degenerated = dg;
+            error = err;
+            entityChars = ec;
+            inCdata = cd;
+            return NEED_INPUT;
+        }
+    }
+
+    /** 
+     * Returns true if text of an open feed has reached the end of the
+     * input fed so far and text-chunk-size is set, so that the text is
+     * returned in part instead of parsing it again after more input.
+     * Without text-chunk-size, a text event waiting for input is parsed
+     * again from its start on each call, up to max-text-length chars. */
+
+    private final boolean fedTextEnds() {
+        return feedOpen
+            && textChunk != Integer.MAX_VALUE
+            && txtPos > 0
+            && peekCount == 0
+            && srcPos >= srcCount;
+    }
+
+    /** Switches back to the parser's own buffers */
+
+    private final void releaseBuffers() {
+        if (ownSrcBuf != null) {
+            srcBuf = ownSrcBuf;
+            ownSrcBuf = null;
+        }
+        if (ownByteBuf != null) {
+            byteBuf = ownByteBuf;
+            ownByteBuf = null;
+        }
+    }
+
+    /** Resets the parser state for new input; the buffers are kept */
+
+    private final void initState() {
+        line = 1;
+        column = 0;
+        srcStart = 0;
+        startLine = 1;
+        startColumn = 0;
+        startCR = false;
+        type = START_DOCUMENT;
+        name = null;
+        namespace = null;
+        degenerated = false;
+        attributeCount = -1;
+        encoding = null;
+        version = null;
+        standalone = null;
+        error = null;
+        srcPos = 0;
+        srcCount = 0;
+        srcBase = 0;
+        byteBase = 0;
+        nspCounts[0] = 0;
+        nspIndex.clear();
+        eventStart = 0;
+        eventStartBytes = -1;
+        peekCount = 0;
+        wasCR = false;
+        depth = 0;
+        entityChars = 0;
+        inCdata = false;
+        feedOpen = false;
+
+        if (reader == null && source == READER)
+            return;
+
+        if (entityMap == null || customEntities) {
+            entityMap = new Hashtable();
+            entityMap.put("amp", "&");
+            entityMap.put("apos", "'");
+            entityMap.put("gt", ">");
+            entityMap.put("lt", "<");
+            entityMap.put("quot", "\"");
+            customEntities = false;
+        }
+    }
+
+    /** 
+     * Releases the input and returns the parser to the state of a newly
+     * created instance, including features and properties, with two
+     * exceptions: the buffers (and thus the buffer-size property) and the
+     * symbol table, also one set with the symbol-table property, are
+     * kept, so a parser can be reused without allocating them again. To
+     * stop sharing a symbol table, set the property to null. */
+
+    public void reset() {
+        releaseInput();
+        processNsp = false;
+        relaxed = false;
+        interned = false;
+        trackPosition = true;
+        for (int i = 0; i < limits.length; i++)
+            limits[i] = Integer.MAX_VALUE;
+        textChunk = Integer.MAX_VALUE;
+    }
+
+    /** 
+     * Releases the input and resets the state of the current document,
+     * including the location and entity definitions, but keeps the
+     * features and properties. */
+
+    final void releaseInput() {
+        releaseBuffers();
+        reader = null;
+        in = null;
+        str = null;
+        source = READER;
+        location = null;
+        if (customEntities)
+            entityMap = null;
+        initState();
+    }
+
+    /** 
+     * Takes over the element stack and namespace declarations of the
+     * given parser, so that input starting in the content of its current
+     * element can be parsed. Must be called after setInput. */
+
+    public void setContext(KXmlParser parent) {
+
+        int d = parent.depth;
+        int n = parent.nspCounts[d] << 1;
+
+        elementStack = ensureCapacity(elementStack, d << 2);
+        nspCounts = ensureCapacity(nspCounts, d + 1);
+        nspStack = ensureCapacity(nspStack, n);
+
+        System.arraycopy(parent.elementStack, 0, elementStack, 0, d << 2);
+        System.arraycopy(parent.nspCounts, 0, nspCounts, 0, d + 1);
+        System.arraycopy(parent.nspStack, 0, nspStack, 0, n);
+        nspIndex.clear();
+        depth = d;
+    }
+
+    /** 
+     * Takes over the features, limits, text-chunk-size and custom entity
+     * definitions of the given parser, and its symbol table if that may
+     * be shared. Must be called after setInput, before parsing. */
+
+    final void copyConfiguration(KXmlParser parent)
+        throws XmlPullParserException {
+
+        processNsp = parent.processNsp;
+        relaxed = parent.relaxed;
+        interned = parent.interned;
+        trackPosition = parent.trackPosition;
+        for (int i = 0; i < LIMITS.length; i++)
+            setLimit(i, new Integer(parent.limits[i]));
+        textChunk = parent.textChunk;
+
+        if (parent.symbols.shared)
+            symbols = parent.symbols;
+
+        if (parent.customEntities) {
+            entityMap = (Hashtable) parent.entityMap.clone();
+            customEntities = true;
+        }
+    }
+
+    /** 
+     * Declares the given prefix and namespace pairs outside the root
+     * element, for input starting inside a document. Must be called
+     * after setInput. */
+
+    final void setNamespaceContext(String[] pairs) {
+        nspStack = ensureCapacity(nspStack, pairs.length);
+        System.arraycopy(pairs, 0, nspStack, 0, pairs.length);
+        nspIndex.clear();
+        nspCounts[0] = pairs.length >> 1;
+    }
+
+    /** 
+     * Returns the name of the encoding decoded by the parser itself, or
+     * null if the input is not decoded from bytes by the parser */
+
+    final String getByteEncoding() {
+        return source == UTF_8
+            ? "UTF-8"
+            : source == ISO_8859_1 ? "ISO-8859-1" : null;
+    }
+
+    /** Returns the number of input chars consumed so far */
+
+    final long getInputOffset() {
+        return srcBase + srcPos - peekCount;
+    }
+
+    private final void startEvent() {
+        eventStart = srcBase + srcPos - peekCount;
+        eventStartBytes = -1;
+
+        // the start is in the peek buffer only right after a refill
+
+        if (eventStart < srcBase)
+            pinEventStart();
+    }
+
+    /** 
+     * Computes the byte offset of the event start for byte input while
+     * the chars following it are still available */
+
+    private final void pinEventStart() {
+        if (eventStartBytes == -1
+            && (source == UTF_8 || source == ISO_8859_1))
+            eventStartBytes = byteOffset(eventStart);
+    }
+
+    /** 
+     * Returns the byte offset of the given char offset, which must not
+     * precede srcBuf and the peek buffer, by subtracting the encoded
+     * length of the following chars from the number of decoded bytes. */
+
+    private final long byteOffset(long offset) {
+
+        long bytes = byteBase + bytePos;
+        int i = (int) (offset - srcBase);
+
+        if (source == ISO_8859_1)
+            return bytes - (srcCount - i);
+
+        // chars taken into the peek buffer before srcBuf was refilled
+
+        for (int j = 0; j < -i; j++)
+            bytes -= utf8Length(peek[j]);
+
+        for (int j = i < 0 ? 0 : i; j < srcCount; j++)
+            bytes -= utf8Length(srcBuf[j]);
+
+        return bytes;
+    }
+
+    private static final int utf8Length(int c) {
+        if (c < 0x080)
+            return 1;
+        if (c < 0x0800 || (c >= 0x0d800 && c < 0x0e000))
+            return 2; // surrogates: four bytes per pair
+        return 3;
+    }
+
+    /** 
+     * Returns the offset in chars of the start of the current event,
+     * counted from the start of the input. */
+
+    public long getEventStartOffset() {
+        return eventStart;
+    }
+
+    /** 
+     * Returns the offset in chars of the end of the current event,
+     * counted from the start of the input. */
+
+    public long getEventEndOffset() {
+        return getInputOffset();
+    }
+
+    /** 
+     * Returns the offset in bytes of the start of the current event for
+     * UTF-8, US-ASCII and ISO-8859-1 byte input, -1 otherwise. Offsets
+     * are exact for well-formed input. */
+
+    public long getEventStartByteOffset() {
+        if (source != UTF_8 && source != ISO_8859_1)
+            return -1;
+        if (eventStartBytes == -1)
+            eventStartBytes = byteOffset(eventStart);
+        return eventStartBytes;
+    }
+
+    /** 
+     * Returns the offset in bytes of the end of the current event, see
+     * getEventStartByteOffset(). */
+
+    public long getEventEndByteOffset() {
+        if (source != UTF_8 && source != ISO_8859_1)
+            return -1;
+        return byteOffset(getInputOffset());
+    }
+
+    /** 
+     * Writes the state of the parser at the end of the current event to
+     * the given stream: input position, line and column, element and
+     * namespace stacks, entity definitions and the entity expansion
+     * count, all features, the limits and the text-chunk-size property.
+     * The input must be UTF-8, US-ASCII or ISO-8859-1 bytes decoded by
+     * the parser. Not included are the text and attributes of the
+     * current event and the buffer-size, symbol-table and location
+     * properties, which keep the values of the resuming parser. */
+
+    public void writeCheckpoint(OutputStream out)
+        throws IOException, XmlPullParserException {
+
+        String enc = getByteEncoding();
+
+        if (enc == null)
+            exception("checkpoints require byte input");
+
+        updatePosition();
+
+        DataOutputStream dos = new DataOutputStream(out);
+
+        dos.writeInt(CHECKPOINT);
+        dos.writeUTF(enc);
+        dos.writeLong(getEventEndByteOffset());
+        dos.writeLong(getInputOffset());
+        dos.writeInt(line);
+        dos.writeInt(column);
+        dos.writeBoolean(processNsp);
+        dos.writeBoolean(relaxed);
+        dos.writeBoolean(interned);
+        dos.writeBoolean(trackPosition);
+        for (int i = 0; i < LIMITS.length; i++)
+            dos.writeInt(limits[i]);
+        dos.writeInt(textChunk);
+        dos.writeInt(entityChars);
+        dos.writeBoolean(inCdata);
+        dos.writeInt(type);
+        dos.writeBoolean(degenerated);
+        writeString(dos, name);
+        writeString(dos, namespace);
+        writeString(dos, prefix);
+        writeString(dos, version);
+        writeString(dos, error);
+        dos.writeByte(
+            standalone == null ? -1 : standalone.booleanValue() ? 1 : 0);
+
+        dos.writeInt(depth);
+        for (int i = 0; i < depth << 2; i++)
+            writeString(dos, elementStack[i]);
+        for (int i = 0; i <= depth; i++)
+            dos.writeInt(nspCounts[i]);
+        for (int i = 0; i < nspCounts[depth] << 1; i++)
+            writeString(dos, nspStack[i]);
+
+        dos.writeBoolean(customEntities);
+        if (customEntities) {
+            dos.writeInt(entityMap.size());
+            for (Enumeration e = entityMap.keys(); e.hasMoreElements();) {
+                String key = (String) e.nextElement();
+                dos.writeUTF(key);
+                dos.writeUTF((String) entityMap.get(key));
+            }
+        }
+        dos.flush();
+    }
+
+    /** 
+     * Sets the input to the given stream of the document a checkpoint
+     * was written for, positioned at its start, and restores the state
+     * from the checkpoint. The stream is skipped to the checkpoint
+     * position, which should be cheap for a FileInputStream. Positions
+     * and offsets continue from the checkpoint; features, limits and
+     * the text-chunk-size are set as listed in writeCheckpoint(). */
+
+    public void resume(InputStream checkpoint, InputStream in)
+        throws IOException, XmlPullParserException {
+
+        DataInputStream dis = new DataInputStream(checkpoint);
+
+        if (dis.readInt() != CHECKPOINT)
+            exception("not a parser checkpoint");
+
+        String enc = dis.readUTF();
+        long bytes = dis.readLong();
+        long skip = bytes;
+
+        while (skip > 0) {
+            long n = in.skip(skip);
+            if (n <= 0)
+                throw new EOFException();
+            skip -= n;
+        }
+
+        setInput(in, enc);
+
+        byteBase = bytes;
+        srcBase = dis.readLong();
+        eventStart = srcBase;
+        line = dis.readInt();
+        column = dis.readInt();
+        startLine = line;
+        startColumn = column;
+        processNsp = dis.readBoolean();
+        relaxed = dis.readBoolean();
+        interned = dis.readBoolean();
+        trackPosition = dis.readBoolean();
+        for (int i = 0; i < LIMITS.length; i++)
+            setLimit(i, new Integer(dis.readInt()));
+        textChunk = dis.readInt();
+        entityChars = dis.readInt();
+        inCdata = dis.readBoolean();
+        type = dis.readInt();
+        degenerated = dis.readBoolean();
+        name = readString(dis);
+        namespace = readString(dis);
+        prefix = readString(dis);
+        version = readString(dis);
+        error = readString(dis);
+
+        int sa = dis.readByte();
+        standalone = sa == -1 ? null : new Boolean(sa == 1);
+
+        depth = dis.readInt();
+        elementStack = ensureCapacity(elementStack, depth << 2);
+        for (int i = 0; i < depth << 2; i++)
+            elementStack[i] = readString(dis);
+
+        nspCounts = ensureCapacity(nspCounts, depth + 1);
+        for (int i = 0; i <= depth; i++)
+            nspCounts[i] = dis.readInt();
+
+        nspStack = ensureCapacity(nspStack, nspCounts[depth] << 1);
+        for (int i = 0; i < nspCounts[depth] << 1; i++)
+            nspStack[i] = readString(dis);
+
+        if (dis.readBoolean()) {
+            entityMap = new Hashtable();
+            for (int i = dis.readInt(); i > 0; i--)
+                entityMap.put(dis.readUTF(), dis.readUTF());
+            customEntities = true;
+        }
+    }
+
+    private static void writeString(DataOutputStream dos, String s)
+        throws IOException {
+        dos.writeBoolean(s != null);
+        if (s != null)
+            dos.writeUTF(s);
+    }
+
+    private static String readString(DataInputStream dis)
+        throws IOException {
+        return dis.readBoolean() ? dis.readUTF() : null;
+    }
+
+    /** Returns the number of chars and bytes held in buffers */
+
+    final int getBufferSize() {
+        return srcBuf.length
+            + txtBuf.length
+            + (byteBuf != null ? byteBuf.length : 0);
+    }
+
+    public void setInput(InputStream is, String _enc)
+        throws XmlPullParserException {
+
+        if (is == null)
+            throw new IllegalArgumentException();
+
+        releaseBuffers();
+        srcPos = 0;
+        srcCount = 0;
+        String enc = _enc;
+        int sniffed = 0;
+
+        try {
+
+            if (enc == null) {
                 // read four bytes 
 
                 int chk = 0;
@@ -1003,6 +2593,7 @@ public class KXmlParser implements XmlPullParser {
                     int i = is.read();
                     if (i == -1)
                         break;
+                    sniffed++;
                     chk = (chk << 8) | i;
                     srcBuf[srcCount++] = (char) i;
                 }
@@ -1046,10 +2637,11 @@ public class KXmlParser implements XmlPullParser {
                             break;
 
                         case 0x03c3f786d :
-                            while (true) {
+                            while (srcCount < srcBuf.length) {
                                 int i = is.read();
                                 if (i == -1)
                                     break;
+                                sniffed++;
                                 srcBuf[srcCount++] = (char) i;
                                 if (i == '>') {
                                     String s = new String(srcBuf, 0, srcCount);
@@ -1092,9 +2684,39 @@ public class KXmlParser implements XmlPullParser {
                 enc = "UTF-8";
 
             int sc = srcCount;
-            setInput(new InputStreamReader(is, enc));
+
+            if (enc.equalsIgnoreCase("UTF-8")
+                || enc.equalsIgnoreCase("UTF8")
+                || enc.equalsIgnoreCase("US-ASCII")) {
+                source = UTF_8;
+            }
+            else if (enc.equalsIgnoreCase("ISO-8859-1")
+                || enc.equalsIgnoreCase("ISO8859_1")) {
+                source = ISO_8859_1;
+            }
+            else {
+                setInput(new InputStreamReader(is, enc));
+                encoding = _enc;
+                srcCount = sc;
+                return;
+            }
+
+            // the sniffed bytes are decoded again together with the rest
+
+            if (byteBuf == null || byteBuf.length < srcBuf.length)
+                byteBuf = new byte[srcBuf.length];
+
+            for (int i = 0; i < sc; i++)
+                byteBuf[i] = (byte) srcBuf[i];
+
+            bytePos = 0;
+            byteCount = sc;
+            reader = null;
+            str = null;
+            in = is;
+            initState();
+            byteBase = sniffed - sc; // skipped byte order mark
             encoding = _enc;
-            srcCount = sc;
         }
         catch (Exception e) {
             throw new XmlPullParserException(
@@ -1109,6 +2731,10 @@ public class KXmlParser implements XmlPullParser {
             return processNsp;
         else if (isProp(feature, false, "relaxed"))
             return relaxed;
+        else if (isProp(feature, false, "names-interned"))
+            return interned;
+        else if (isProp(feature, false, "track-position"))
+            return trackPosition;
         else
             return false;
     }
@@ -1122,6 +2748,7 @@ public class KXmlParser implements XmlPullParser {
         if (entityMap == null)
             throw new RuntimeException("entity replacement text must be defined after setInput!");
         entityMap.put(entity, value);
+        customEntities = true;
     }
 
     public Object getProperty(String property) {
@@ -1129,8 +2756,23 @@ public class KXmlParser implements XmlPullParser {
             return version;
         if (isProp(property, true, "xmldecl-standalone"))
             return standalone;
+        if (isProp(property, true, "buffer-size"))
+            return new Integer(srcBuf.length);
+        if (isProp(property, true, "symbol-table"))
+            return symbols;
+        if (isProp(property, true, "text-chunk-size"))
+            return textChunk == Integer.MAX_VALUE
+                ? null
+                : new Integer(textChunk);
+        for (int i = 0; i < LIMITS.length; i++)
+            if (isProp(property, true, LIMITS[i]))
+                return limits[i] == Integer.MAX_VALUE
+                    ? null
+                    : new Integer(limits[i]);
 		if (isProp(property, true, "location"))            
-			return location != null ? location : reader.toString();
+			return location != null
+				? location
+				: reader != null ? (Object) reader.toString() : in;
         return null;
     }
 
@@ -1155,15 +2797,13 @@ public class KXmlParser implements XmlPullParser {
         if ("xmlns".equals(prefix))
             return "http://www.w3.org/2000/xmlns/";
 
-        for (int i = (getNamespaceCount(depth) << 1) - 2; i >= 0; i -= 2) {
-            if (prefix == null) {
-                if (nspStack[i] == null)
-                    return nspStack[i + 1];
-            }
-            else if (prefix.equals(nspStack[i]))
-                return nspStack[i + 1];
-        }
-        return null;
+        int n = nspCounts[depth];
+
+        if (nspIndex.size() != n)
+            nspIndex.update(nspStack, n);
+
+        int i = nspIndex.get(prefix);
+        return i == -1 ? null : nspStack[(i << 1) + 1];
     }
 
     public int getDepth() {
@@ -1193,7 +2833,7 @@ public class KXmlParser implements XmlPullParser {
                 if (attributes[i + 1] != null)
                     buf.append(
                         "{" + attributes[i] + "}" + attributes[i + 1] + ":");
-                buf.append(attributes[i + 2] + "='" + attributes[i + 3] + "'");
+                buf.append(attributes[i + 2] + "='" + attributeValue(i) + "'");
             }
 
             buf.append('>');
@@ -1210,6 +2850,7 @@ public class KXmlParser implements XmlPullParser {
             buf.append(text);
         }
 
+		updatePosition();
 		buf.append("@"+line + ":" + column);
 		if(location != null){
 			buf.append(" in ");
@@ -1223,10 +2864,12 @@ public class KXmlParser implements XmlPullParser {
     }
 
     public int getLineNumber() {
+        updatePosition();
         return line;
     }
 
     public int getColumnNumber() {
+        updatePosition();
         return column;
     }
 
@@ -1309,7 +2952,7 @@ public class KXmlParser implements XmlPullParser {
     public String getAttributeValue(int index) {
         if (index >= attributeCount)
             throw new IndexOutOfBoundsException();
-        return attributes[(index << 2) + 3];
+        return attributeValue(index << 2);
     }
 
     public String getAttributeValue(String namespace, String name) {
@@ -1317,7 +2960,7 @@ public class KXmlParser implements XmlPullParser {
         for (int i = (attributeCount << 2) - 4; i >= 0; i -= 4) {
             if (attributes[i + 2].equals(name)
                 && (namespace == null || attributes[i].equals(namespace)))
-                return attributes[i + 3];
+                return attributeValue(i);
         }
 
         return null;
@@ -1328,6 +2971,11 @@ public class KXmlParser implements XmlPullParser {
     }
 
     public int next() throws XmlPullParserException, IOException {
+        return feedOpen ? nextFed(false) : nextEvent();
+    }
+
+    private final int nextEvent()
+        throws XmlPullParserException, IOException {
 
         txtPos = 0;
         isWhitespace = true;
@@ -1335,13 +2983,18 @@ public class KXmlParser implements XmlPullParser {
         token = false;
 
         do {
+            if (minType > ENTITY_REF)
+                startEvent(); // ignorable events are not part of the result
             nextImpl();
             if (type < minType)
                 minType = type;
             //	    if (curr <= TEXT) type = curr; 
         }
         while (minType > ENTITY_REF // ignorable
-            || (minType >= TEXT && peekType() >= TEXT));
+            || (minType >= TEXT
+                && txtPos < textChunk
+                && !fedTextEnds()
+                && peekType() >= TEXT));
 
         type = minType;
         if (type > TEXT)
@@ -1351,11 +3004,17 @@ public class KXmlParser implements XmlPullParser {
     }
 
     public int nextToken() throws XmlPullParserException, IOException {
+        return feedOpen ? nextFed(true) : nextTokenEvent();
+    }
+
+    private final int nextTokenEvent()
+        throws XmlPullParserException, IOException {
 
         isWhitespace = true;
         txtPos = 0;
 
         token = true;
+        startEvent();
         nextImpl();
         return type;
     }
@@ -1406,12 +3065,145 @@ public class KXmlParser implements XmlPullParser {
         return result;
     }
 
+    /** 
+     * Decodes the base64 content of the current start tag to the given
+     * stream and returns the number of bytes written. The chars are
+     * decoded as they are read, without building the text of the
+     * element; only CDATA sections and entity references are taken
+     * from txtBuf. Whitespace, comments and PIs are ignored. Like
+     * nextText(), the parser is positioned on the end tag afterwards. */
+
+    public int readBase64(OutputStream out)
+        throws XmlPullParserException, IOException {
+
+        if (type != START_TAG)
+            exception("precondition: START_TAG");
+        if (feedOpen)
+            exception("readBase64 needs complete input");
+
+        byte[] buf = new byte[1024];
+        int len = 0;
+        int total = 0;
+        int bits = 0;
+        int count = 0;
+        boolean padded = false;
+        String text = null;
+        int textPos = 0;
+
+        if (degenerated) {
+            next();
+            return 0;
+        }
+
+        while (true) {
+            int c;
+
+            if (text != null) {
+                if (textPos == text.length()) {
+                    text = null;
+                    continue;
+                }
+                c = text.charAt(textPos++);
+            }
+            else if (!inCdata
+                && peekCount == 0
+                && srcPos < srcCount
+                && (c = srcBuf[srcPos]) != '<'
+                && c != '&'
+                && c != '\r'
+                && c != '\n') {
+                srcPos++;
+                wasCR = false;
+                if (trackPosition)
+                    column++;
+            }
+            else if (!inCdata && (c = peek(0)) != '<' && c != '&' && c != -1)
+                read();
+            else {
+                // markup: let nextToken() handle it
+
+                int t = nextToken();
+
+                if (t == END_TAG)
+                    break;
+                if (t == START_TAG || t == END_DOCUMENT)
+                    exception("unexpected " + TYPES[t] + " in base64 content");
+                if (t == CDSECT || t == ENTITY_REF) {
+                    text = getText();
+                    textPos = 0;
+                    if (text == null)
+                        error("unresolved: &" + name + ";");
+                }
+                continue;
+            }
+
+            if (c <= ' ')
+                continue;
+
+            int v = c < 128 ? BASE64[c] : -1;
+
+            if (v != -1 && !padded) {
+                bits = (bits << 6) | v;
+                if (++count == 4) {
+                    if (len > buf.length - 3) {
+                        out.write(buf, 0, len);
+                        total += len;
+                        len = 0;
+                    }
+                    buf[len++] = (byte) (bits >> 16);
+                    buf[len++] = (byte) (bits >> 8);
+                    buf[len++] = (byte) bits;
+                    bits = 0;
+                    count = 0;
+                }
+            }
+            else if (c == '=' && (padded || count >= 2)) {
+                if (!padded) {
+                    if (len > buf.length - 2) {
+                        out.write(buf, 0, len);
+                        total += len;
+                        len = 0;
+                    }
+                    if (count == 2)
+                        buf[len++] = (byte) (bits >> 4);
+                    else {
+                        buf[len++] = (byte) (bits >> 10);
+                        buf[len++] = (byte) (bits >> 2);
+                    }
+                    padded = true;
+                    count = 0;
+                }
+            }
+            else
+                error("illegal base64 char: '" + (char) c + "'");
+        }
+
+        if (count != 0)
+            error("incomplete base64 data");
+
+        out.write(buf, 0, len);
+        return total + len;
+    }
+
     public void setFeature(String feature, boolean value)
         throws XmlPullParserException {
         if (XmlPullParser.FEATURE_PROCESS_NAMESPACES.equals(feature))
             processNsp = value;
         else if (isProp(feature, false, "relaxed"))
             relaxed = value;
+        else if (isProp(feature, false, "names-interned"))
+            interned = value;
+        else if (isProp(feature, false, "track-position")) {
+            updatePosition();
+            if (!value) {
+                int pos = srcPos - peekCount;
+                srcStart = pos < srcStart ? srcStart : pos;
+                startLine = line;
+                startColumn = column;
+                startCR = false;
+            }
+            trackPosition = value;
+        }
         else
             exception("unsupported feature: " + feature);
     }
@@ -1420,29 +3212,100 @@ public class KXmlParser implements XmlPullParser {
         throws XmlPullParserException {
         if(isProp(property, true, "location"))
         	location = value;
-        else
+        else if (isProp(property, true, "buffer-size")) {
+            int size = ((Integer) value).intValue();
+            if (size < 128)
+                exception("buffer-size too small: " + size);
+            if (srcPos < srcCount || peekCount != 0)
+                exception("buffer-size must be set before setInput");
+            srcBuf = new char[size];
+            ownSrcBuf = null;
+        }
+        else if (isProp(property, true, "symbol-table"))
+            symbols = value != null ? (SymbolTable) value : new SymbolTable(false);
+        else if (isProp(property, true, "text-chunk-size")) {
+            int size = value == null
+                ? Integer.MAX_VALUE
+                : ((Integer) value).intValue();
+            if (size < 1)
+                exception("illegal text-chunk-size: " + size);
+            textChunk = size;
+        }
+        else {
+            for (int i = 0; i < LIMITS.length; i++) {
+                if (isProp(property, true, LIMITS[i])) {
+                    setLimit(i, value);
+                    return;
+                }
+            }
 	        throw new XmlPullParserException("unsupported property: " + property);
+        }
+    }
+
+    private final void setLimit(int limit, Object value)
+        throws XmlPullParserException {
+
+        int max = value == null
+            ? Integer.MAX_VALUE
+            : ((Integer) value).intValue();
+
+        if (max < 1)
+            exception("illegal " + LIMITS[limit] + ": " + max);
+
+        limits[limit] = max;
+
+        if (limit == MAX_TEXT_LENGTH && txtBuf.length > max) {
+            char[] smaller = new char[txtPos > max ? txtPos : max];
+            System.arraycopy(txtBuf, 0, smaller, 0, txtPos);
+            txtBuf = smaller;
+        }
+    }
+
+    /** 
+     * Moves the parser to the next START_TAG with the given name and
+     * namespace, or null for any namespace, and returns START_TAG, or
+     * END_DOCUMENT if there is none. Text is skipped without building
+     * it, see skipText(), so in strict mode entity references are still
+     * checked; tags are parsed as usual, keeping the element stack and
+     * namespace context up to date. Feed input must have been ended
+     * with endInput(), since the skip cannot wait for more input. */
+
+    public int skipToStartTag(String namespace, String name)
+        throws XmlPullParserException, IOException {
+
+        if (feedOpen)
+            exception("skipToStartTag needs complete input");
+
+        while (type != END_DOCUMENT) {
+            if (!degenerated && error == null && !inCdata)
+                skipText();
+            nextMarkup();
+
+            if (type == START_TAG
+                && name.equals(this.name)
+                && (namespace == null || namespace.equals(this.namespace)))
+                break;
+        }
+        return type;
     }
 
     /**
       * Skip sub tree that is currently porser positioned on.
       * <br>NOTE: parser must be on START_TAG and when funtion returns
-      * parser will be positioned on corresponding END_TAG. 
+      * parser will be positioned on corresponding END_TAG. The content
+      * is skipped by a raw scan, see skipContent(). Feed input must have
+      * been ended with endInput().
       */
 
-    //	Implementation copied from Alek's mail... 
-
     public void skipSubTree() throws XmlPullParserException, IOException {
         require(START_TAG, null, null);
-        int level = 1;
-        while (level > 0) {
-            int eventType = next();
-            if (eventType == END_TAG) {
-                --level;
-            }
-            else if (eventType == START_TAG) {
-                ++level;
-            }
-        }
+
+        if (feedOpen)
+            exception("skipSubTree needs complete input");
+
+        if (!degenerated)
+            skipContent();
+        if (next() != END_TAG)
+            error(UNEXPECTED_EOF);
     }
 }
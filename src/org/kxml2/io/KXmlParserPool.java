@@ -0,0 +1,167 @@
+/* Copyright (c) 2002,2003, Stefan Haustein, Oberhausen, Rhld., Germany
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The  above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE. */
+
+package org.kxml2.io;
+
+import java.util.*;
+
+import org.xmlpull.v1.*;
+
+/** 
+ * A thread safe pool of KXmlParser instances for applications parsing
+ * many small documents. Features and properties set on the pool are
+ * applied once when a parser is created; returned parsers only release
+ * their input and document state, so their buffers and configuration
+ * are reused. Changing the pool configuration drops the idle parsers.
+ * Parsers whose buffers grew beyond the given limit are dropped instead
+ * of being kept. */
+
+public class KXmlParserPool {
+
+    private KXmlParser[] parsers;
+    private int count;
+    private int maxBufferSize;
+    private int highWaterMark;
+    private int generation;
+    private Hashtable features = new Hashtable();
+    private Hashtable properties = new Hashtable();
+
+    /** 
+     * Creates a pool keeping at most maxSize idle parsers, each holding
+     * at most maxBufferSize chars and bytes in its buffers. */
+
+    public KXmlParserPool(int maxSize, int maxBufferSize) {
+        parsers = new KXmlParser[maxSize];
+        this.maxBufferSize = maxBufferSize;
+    }
+
+    /** Sets a feature for all parsers handed out from now on */
+
+    public synchronized void setFeature(String name, boolean value)
+        throws XmlPullParserException {
+        if (!KXmlParser.isFeature(name))
+            throw new XmlPullParserException("unsupported feature: " + name);
+        features.put(name, new Boolean(value));
+        changed();
+    }
+
+    /** 
+     * Sets a property for all parsers handed out from now on. The
+     * location property describes a single input and is not supported;
+     * null restores the default value. */
+
+    public synchronized void setProperty(String name, Object value)
+        throws XmlPullParserException {
+        if (!KXmlParser.isConfigProperty(name))
+            throw new XmlPullParserException("unsupported property: " + name);
+
+        boolean valid;
+        if (name.endsWith("#symbol-table"))
+            valid = value == null || value instanceof SymbolTable;
+        else if (value instanceof Integer)
+            valid = ((Integer) value).intValue()
+                >= (name.endsWith("#buffer-size") ? 128 : 1);
+        else
+            valid = value == null && !name.endsWith("#buffer-size");
+
+        if (!valid)
+            throw new XmlPullParserException(
+                "illegal value for " + name + ": " + value);
+
+        if (value == null)
+            properties.remove(name);
+        else
+            properties.put(name, value);
+        changed();
+    }
+
+    /** Drops the idle parsers, which have the old configuration */
+
+    private final void changed() {
+        generation++;
+        while (count > 0)
+            parsers[--count] = null;
+    }
+
+    /** Returns an idle parser from the pool or a new one */
+
+    public synchronized KXmlParser acquire() throws XmlPullParserException {
+
+        if (count > 0) {
+            KXmlParser parser = parsers[--count];
+            parsers[count] = null;
+            return parser;
+        }
+
+        KXmlParser parser = new KXmlParser();
+
+        for (Enumeration e = features.keys(); e.hasMoreElements();) {
+            String name = (String) e.nextElement();
+            parser.setFeature(
+                name,
+                ((Boolean) features.get(name)).booleanValue());
+        }
+
+        for (Enumeration e = properties.keys(); e.hasMoreElements();) {
+            String name = (String) e.nextElement();
+            parser.setProperty(name, properties.get(name));
+        }
+
+        parser.generation = generation;
+        return parser;
+    }
+
+    /** 
+     * Returns a parser to the pool. The parser must not be used by the
+     * caller afterwards. Its input, document state and entity
+     * definitions are released; features and properties are not
+     * restored, so callers must not change them on pooled parsers.
+     * Parsers acquired before the pool configuration changed are
+     * dropped. */
+
+    public void release(KXmlParser parser) {
+
+        parser.releaseInput();
+        int size = parser.getBufferSize();
+
+        synchronized (this) {
+            if (size > highWaterMark)
+                highWaterMark = size;
+
+            if (size <= maxBufferSize
+                && count < parsers.length
+                && parser.generation == generation)
+                parsers[count++] = parser;
+        }
+    }
+    /** Returns the number of idle parsers in the pool */
+
+    public synchronized int size() {
+        return count;
+    }
+
+    /** 
+     * Returns the largest buffer size (in chars and bytes) of all
+     * parsers returned to the pool so far. */
+
+    public synchronized int getHighWaterMark() {
+        return highWaterMark;
+    }
+}
@@ -39,6 +39,8 @@ public class KXmlSerializer implements XmlSerializer {
     private int[] nspCounts = new int[4];
     private String[] nspStack = new String[8];
     //prefix/nsp; both empty are ""
+    private NamespaceIndex prefixIndex = new NamespaceIndex(0);
+    private NamespaceIndex uriIndex = new NamespaceIndex(1);
     private boolean[] indent = new boolean[4];
     private boolean unicode;
     private String encoding;
@@ -195,23 +197,23 @@ public class KXmlSerializer implements XmlSerializer {
         boolean create)
         throws IOException {
 
-        for (int i = nspCounts[depth + 1] * 2 - 2;
-            i >= 0;
-            i -= 2) {
-            if (nspStack[i + 1].equals(namespace)
-                && (includeDefault || !nspStack[i].equals(""))) {
-                String cand = nspStack[i];
-                for (int j = i + 2;
-                    j < nspCounts[depth + 1] * 2;
-                    j++) {
-                    if (nspStack[j].equals(cand)) {
-                        cand = null;
-                        break;
-                    }
-                }
-                if (cand != null)
-                    return cand;
-            }
+        int n = nspCounts[depth + 1];
+
+        if (prefixIndex.size() != n) {
+            prefixIndex.update(nspStack, n);
+            uriIndex.update(nspStack, n);
+        }
+
+        // a prefix bound to the namespace that is not redeclared
+        // further in
+
+        for (int i = uriIndex.get(namespace);
+            i != -1;
+            i = uriIndex.previous(i)) {
+            String cand = nspStack[i * 2];
+            if ((includeDefault || !cand.equals(""))
+                && prefixIndex.get(cand) == i)
+                return cand;
         }
 
         if (!create)
@@ -224,14 +226,8 @@ public class KXmlSerializer implements XmlSerializer {
         else {
             do {
                 prefix = "n" + (auto++);
-                for (int i = nspCounts[depth + 1] * 2 - 2;
-                    i >= 0;
-                    i -= 2) {
-                    if (prefix.equals(nspStack[i])) {
-                        prefix = null;
-                        break;
-                    }
-                }
+                if (prefixIndex.get(prefix) != -1)
+                    prefix = null;
             }
             while (prefix == null);
         }
@@ -284,6 +280,11 @@ public class KXmlSerializer implements XmlSerializer {
 
         int pos = (nspCounts[depth + 1]++) << 1;
 
+        if (prefixIndex.size() > pos >> 1) {
+            prefixIndex.update(nspStack, pos >> 1);
+            uriIndex.update(nspStack, pos >> 1);
+        }
+
         if (nspStack.length < pos + 1) {
             String[] hlp = new String[nspStack.length + 16];
             System.arraycopy(nspStack, 0, hlp, 0, pos);
@@ -308,6 +309,8 @@ public class KXmlSerializer implements XmlSerializer {
         nspStack[1] = "";
         nspStack[2] = "xml";
         nspStack[3] = "http://www.w3.org/XML/1998/namespace";
+        prefixIndex.clear();
+        uriIndex.clear();
         pending = false;
         auto = 0;
         depth = 0;
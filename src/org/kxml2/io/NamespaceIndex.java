@@ -0,0 +1,191 @@
+/* Copyright (c) 2002,2003, Stefan Haustein, Oberhausen, Rhld., Germany
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The  above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE. */
+
+package org.kxml2.io;
+
+/** 
+ * A hashed index over a namespace stack of prefix/URI pairs, as kept
+ * by KXmlParser and KXmlSerializer. For each key (the prefix or the
+ * URI of the pairs, depending on the field given to the constructor),
+ * it holds the innermost entry, and each entry links to the entry with
+ * the same key it shadows. The index follows the stack lazily: update()
+ * adds or removes entries at the top when the number of entries in
+ * scope changed. Before an entry that is already indexed is overwritten,
+ * the index must be cut back with update() or clear(). Keys without
+ * entries are removed, so that generated prefixes do not accumulate.
+ * A null key, as the parser uses for the default namespace, is kept
+ * apart from "". */
+
+final class NamespaceIndex {
+
+    /** Stored for the null key; compared by identity only */
+
+    private static final String NULL = new String("");
+
+    private final int field;
+    private String[] keys = new String[16];
+    private int[] top = new int[16];
+    private int[] prev = new int[8];
+    private int keyCount;
+    private int count;
+
+    /** 
+     * Creates an index over the prefixes (field 0) or URIs (field 1) of
+     * a namespace stack */
+
+    NamespaceIndex(int field) {
+        this.field = field;
+    }
+
+    /** Returns the number of entries indexed */
+
+    int size() {
+        return count;
+    }
+
+    /** Removes all keys and entries */
+
+    void clear() {
+        for (int i = 0; i < keys.length; i++)
+            keys[i] = null;
+        keyCount = 0;
+        count = 0;
+    }
+
+    /** 
+     * Adds or removes entries so that the first n entries of the given
+     * stack are indexed */
+
+    void update(String[] stack, int n) {
+
+        while (count > n) {
+            int i = --count;
+            int slot = slot(stack[(i << 1) + field]);
+            if (prev[i] == -1)
+                remove(slot);
+            else
+                top[slot] = prev[i];
+        }
+
+        while (count < n) {
+            int i = count++;
+            String key = stack[(i << 1) + field];
+            int slot = slot(key);
+
+            if (keys[slot] == null) {
+                if (++keyCount * 2 > keys.length) {
+                    rehash();
+                    slot = slot(key);
+                }
+                keys[slot] = key == null ? NULL : key;
+                top[slot] = -1;
+            }
+
+            if (i >= prev.length) {
+                int[] bigger = new int[prev.length * 2];
+                System.arraycopy(prev, 0, bigger, 0, prev.length);
+                prev = bigger;
+            }
+
+            prev[i] = top[slot];
+            top[slot] = i;
+        }
+    }
+
+    /** 
+     * Returns the innermost indexed entry with the given key, or -1 if
+     * there is none */
+
+    int get(String key) {
+        int slot = slot(key);
+        return keys[slot] == null ? -1 : top[slot];
+    }
+
+    /** 
+     * Returns the next outer entry with the same key as the given entry,
+     * or -1 if there is none */
+
+    int previous(int entry) {
+        return prev[entry];
+    }
+
+    private final int slot(String key) {
+        if (key == null)
+            key = NULL;
+
+        int mask = keys.length - 1;
+        int i = key.hashCode() & mask;
+
+        while (keys[i] != null
+            && keys[i] != key
+            && (keys[i] == NULL || key == NULL || !keys[i].equals(key)))
+            i = (i + 1) & mask;
+
+        return i;
+    }
+
+    /** 
+     * Removes the key in the given slot, moving keys of the same probe
+     * sequence back into the gap */
+
+    private final void remove(int slot) {
+
+        int mask = keys.length - 1;
+        int gap = slot;
+        int i = slot;
+
+        keys[gap] = null;
+        keyCount--;
+
+        while (true) {
+            i = (i + 1) & mask;
+            if (keys[i] == null)
+                return;
+
+            int home = keys[i].hashCode() & mask;
+
+            // move the key unless its home slot lies after the gap, up
+            // to its current slot
+
+            if (gap <= i ? (home <= gap || home > i) : (home <= gap && home > i)) {
+                keys[gap] = keys[i];
+                top[gap] = top[i];
+                keys[i] = null;
+                gap = i;
+            }
+        }
+    }
+
+    private final void rehash() {
+        String[] oldKeys = keys;
+        int[] oldTop = top;
+
+        keys = new String[oldKeys.length * 2];
+        top = new int[keys.length];
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int slot = slot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                top[slot] = oldTop[i];
+            }
+        }
+    }
+}
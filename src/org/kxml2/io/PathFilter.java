@@ -0,0 +1,299 @@
+/* Copyright (c) 2002,2003, Stefan Haustein, Oberhausen, Rhld., Germany
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The  above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE. */
+
+package org.kxml2.io;
+
+import java.io.*;
+import java.util.*;
+import org.xmlpull.v1.*;
+
+/** 
+ * Reports the elements and attributes matching a set of simple path
+ * expressions while parsing a document with a KXmlParser. Supported
+ * are absolute paths of local element names, where '*' matches any
+ * name and '//' any number of elements, optionally ending with an
+ * attribute name, as in "/feed/entry/title" or "//item/@id". The
+ * content of elements that cannot contain a match is skipped with
+ * KXmlParser.skipContent(): in relaxed mode by a raw scan that does
+ * not build names, attributes or text, in strict mode without building
+ * text, while tags are still parsed so that they are checked. */
+
+public class PathFilter {
+
+    /** Receives the matches of a subscribed path */
+
+    public interface Handler {
+
+        /** 
+         * Called with the parser positioned on the start tag of a
+         * matching element, with a null value, or of the element of a
+         * matching attribute, with the attribute value. The handler may
+         * read the content of the element, but must leave the parser on
+         * the start tag or on the corresponding end tag. If several
+         * paths match an element, all attribute values are read first,
+         * and the handlers of attribute paths are called before those of
+         * element paths; only the last handler called for an element
+         * may read its content, otherwise parse() throws an exception. */
+
+        void match(String path, KXmlParser parser, String value)
+            throws IOException, XmlPullParserException;
+    }
+
+    private Vector paths = new Vector();
+    private Vector handlers = new Vector();
+
+    /** element names of the steps of each path, "*" for any */
+
+    private String[][] names;
+
+    /** true for steps that may be preceded by any number of elements */
+
+    private boolean[][] descendant;
+
+    /** attribute name of each path, or null */
+
+    private String[] attributes;
+
+    /** 
+     * active states for each depth: path index in the upper 16 bits,
+     * step index in the lower 16 bits */
+
+    private int[][] states = new int[8][];
+    private int[] stateCounts = new int[8];
+    private int[] matches = new int[4];
+    private String[] values = new String[4];
+
+    /** Adds a path and the handler receiving its matches */
+
+    public void subscribe(String path, Handler handler) {
+
+        if (!path.startsWith("/"))
+            throw new IllegalArgumentException("absolute path expected: " + path);
+
+        paths.addElement(path);
+        handlers.addElement(handler);
+        names = null;
+    }
+
+    private final void compile() {
+
+        int count = paths.size();
+
+        if (count > 0x0ffff)
+            throw new RuntimeException("too many paths");
+
+        names = new String[count][];
+        descendant = new boolean[count][];
+        attributes = new String[count];
+
+        for (int p = 0; p < count; p++) {
+            String path = (String) paths.elementAt(p);
+            Vector steps = new Vector();
+            StringBuffer desc = new StringBuffer();
+            int len = path.length();
+            int i = 0;
+
+            while (i < len) {
+                boolean any = false;
+
+                i++; // '/'
+                if (i < len && path.charAt(i) == '/') {
+                    any = true;
+                    i++;
+                }
+
+                int j = path.indexOf('/', i);
+                if (j == -1)
+                    j = len;
+
+                String step = path.substring(i, j);
+
+                if (step.startsWith("@") && j == len && !any)
+                    attributes[p] = step.substring(1).intern();
+                else if (step.length() == 0 || step.startsWith("@"))
+                    throw new IllegalArgumentException("illegal path: " + path);
+                else {
+                    steps.addElement(step.intern());
+                    desc.append(any ? '1' : '0');
+                }
+                i = j;
+            }
+
+            if (steps.size() == 0)
+                throw new IllegalArgumentException("illegal path: " + path);
+
+            names[p] = new String[steps.size()];
+            steps.copyInto(names[p]);
+
+            descendant[p] = new boolean[steps.size()];
+            for (int s = 0; s < desc.length(); s++)
+                descendant[p][s] = desc.charAt(s) == '1';
+        }
+    }
+
+    /** 
+     * Parses the input of the given parser up to the end of the
+     * document, calling the handlers of matching paths. The parser
+     * must read from a stream or reader; feed input that has not been
+     * ended with endInput() is rejected, since the document would end
+     * in the middle of an event. */
+
+    public void parse(KXmlParser parser)
+        throws IOException, XmlPullParserException {
+
+        if (parser.isFeedOpen())
+            throw new XmlPullParserException(
+                "PathFilter needs complete input, not feed input",
+                parser,
+                null);
+
+        if (names == null)
+            compile();
+
+        int count = names.length;
+
+        states[0] = ensureCapacity(states[0], count);
+        for (int p = 0; p < count; p++)
+            states[0][p] = p << 16;
+        stateCounts[0] = count;
+
+        while (true) {
+            int type = parser.next();
+
+            if (type == XmlPullParser.END_DOCUMENT)
+                break;
+
+            if (type == XmlPullParser.START_TAG)
+                startTag(parser);
+        }
+    }
+
+    private final void startTag(KXmlParser parser)
+        throws IOException, XmlPullParserException {
+
+        int depth = parser.getDepth();
+        String name = parser.getName();
+
+        if (depth >= states.length) {
+            int[][] bigger = new int[depth + 8][];
+            System.arraycopy(states, 0, bigger, 0, states.length);
+            states = bigger;
+
+            int[] biggerCounts = new int[depth + 8];
+            System.arraycopy(stateCounts, 0, biggerCounts, 0, stateCounts.length);
+            stateCounts = biggerCounts;
+        }
+
+        int[] parent = states[depth - 1];
+        int parentCount = stateCounts[depth - 1];
+        int[] current = ensureCapacity(states[depth], parentCount * 2);
+        int count = 0;
+        int matchCount = 0;
+
+        for (int i = 0; i < parentCount; i++) {
+            int state = parent[i];
+            int p = state >>> 16;
+            int step = state & 0x0ffff;
+            String want = names[p][step];
+
+            if (descendant[p][step])
+                count = add(current, count, state);
+
+            if (want == "*" || want.equals(name)) {
+                if (step + 1 < names[p].length)
+                    count = add(current, count, state + 1);
+                else {
+                    matches = ensureCapacity(matches, matchCount + 1);
+                    matches[matchCount++] = p;
+                }
+            }
+        }
+
+        states[depth] = current;
+        stateCounts[depth] = count;
+
+        // read all attribute values before any handler may move the
+        // parser, and call the handlers of attribute paths first
+
+        if (values.length < matchCount) {
+            String[] bigger = new String[matchCount + 8];
+            System.arraycopy(values, 0, bigger, 0, values.length);
+            values = bigger;
+        }
+
+        int calls = 0;
+        for (int i = 0; i < matchCount; i++) {
+            int p = matches[i];
+            if (attributes[p] != null) {
+                values[i] = parser.getAttributeValue(null, attributes[p]);
+                if (values[i] == null)
+                    continue;
+            }
+            calls++;
+        }
+
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = 0; i < matchCount; i++) {
+                int p = matches[i];
+                String value = values[i];
+
+                if ((attributes[p] == null) != (pass == 1)
+                    || (pass == 0 && value == null))
+                    continue;
+
+                values[i] = null;
+                String path = (String) paths.elementAt(p);
+                ((Handler) handlers.elementAt(p)).match(path, parser, value);
+                calls--;
+
+                if (parser.getEventType() != XmlPullParser.START_TAG) {
+                    if (calls > 0)
+                        throw new XmlPullParserException(
+                            "handler of "
+                                + path
+                                + " read an element also matched by other paths",
+                            parser,
+                            null);
+                    return; // the handler has consumed the element
+                }
+            }
+        }
+
+        if (count == 0 && !parser.isEmptyElementTag())
+            parser.skipContent();
+    }
+
+    private static final int add(int[] states, int count, int state) {
+        for (int i = 0; i < count; i++)
+            if (states[i] == state)
+                return count;
+        states[count] = state;
+        return count + 1;
+    }
+
+    private static final int[] ensureCapacity(int[] arr, int required) {
+        if (arr != null && arr.length >= required)
+            return arr;
+        int[] bigger = new int[required + 8];
+        if (arr != null)
+            System.arraycopy(arr, 0, bigger, 0, arr.length);
+        return bigger;
+    }
+}
@@ -0,0 +1,186 @@
+/* Copyright (c) 2002,2003, Stefan Haustein, Oberhausen, Rhld., Germany
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The  above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE. */
+
+package org.kxml2.io;
+
+import java.io.*;
+import org.xmlpull.v1.*;
+
+/** 
+ * Splits a document held in a char array into ranges of complete
+ * children of the root element, for documents consisting of many
+ * records, so that the ranges can be parsed independently, for
+ * instance by separate threads. The ranges are found by a raw scan
+ * that only recognizes tags, comments, CDATA sections and PIs; each
+ * range is checked by its own parser. */
+
+public class RecordSplitter {
+
+    private KXmlParser root;
+    private char[] buf;
+    private int start;
+    private int end;
+
+    /** 
+     * Reads the prolog and the start tag of the root element of the
+     * given input with the given parser, which needs to be configured
+     * already. The parser stays positioned on the root start tag and
+     * must not be used otherwise while parsers are created from it. */
+
+    public RecordSplitter(KXmlParser root, char[] buf, int off, int len)
+        throws XmlPullParserException, IOException {
+
+        this.root = root;
+        this.buf = buf;
+
+        root.setInput(buf, off, len);
+
+        while (root.next() != XmlPullParser.START_TAG) {
+            if (root.getEventType() == XmlPullParser.END_DOCUMENT)
+                throw new XmlPullParserException("root element expected");
+        }
+
+        start = off + (int) root.getInputOffset();
+        end = root.isEmptyElementTag() ? start : off + len;
+    }
+
+    /** 
+     * Returns the boundaries of at most the given number of ranges of
+     * about equal size, covering the content of the root element. Range
+     * i starts at index i and ends at index i + 1 of the result. */
+
+    public int[] split(int parts) {
+
+        int[] cuts = new int[parts + 1];
+        int count = 1;
+        int size = (end - start) / parts + 1;
+        int next = start + size;
+        int depth = 0;
+        int pos = start;
+
+        cuts[0] = start;
+
+        while (pos < end) {
+
+            if (buf[pos] != '<') {
+                pos++;
+                continue;
+            }
+
+            int c = pos + 1 < end ? buf[pos + 1] : -1;
+
+            if (c == '/') {
+                if (depth == 0)
+                    break; // end tag of the root element
+                depth--;
+                pos = skipTag(pos + 2);
+            }
+            else if (c == '?')
+                pos = skipTo(pos + 2, "?>");
+            else if (c == '!') {
+                if (startsWith(pos, "<!--"))
+                    pos = skipTo(pos + 4, "-->");
+                else if (startsWith(pos, "<![CDATA["))
+                    pos = skipTo(pos + 9, "]]>");
+                else
+                    pos = skipTag(pos + 2);
+            }
+            else {
+                pos = skipTag(pos + 1);
+                if (pos <= end && buf[pos - 2] != '/')
+                    depth++;
+            }
+
+            if (depth == 0 && pos >= next && count < parts) {
+                cuts[count++] = pos;
+                next = pos + size;
+            }
+        }
+
+        if (pos > end)
+            pos = end;
+
+        if (cuts[count - 1] != pos || count == 1)
+            cuts[count++] = pos;
+
+        int[] result = new int[count];
+        System.arraycopy(cuts, 0, result, 0, count);
+        return result;
+    }
+
+    /** 
+     * Creates a parser for the given range, with the features, limits,
+     * text-chunk-size, entity definitions, element stack and namespace
+     * declarations of the root parser. Its symbol table is shared if it
+     * was set as a property, otherwise the parser gets its own table.
+     * The range should be one returned by split(). This method may be
+     * called concurrently. */
+
+    public KXmlParser createParser(int from, int to)
+        throws XmlPullParserException {
+
+        KXmlParser parser = new KXmlParser();
+
+        parser.setInput(buf, from, to - from);
+        parser.copyConfiguration(root);
+        parser.setContext(root);
+        return parser;
+    }
+
+    private final boolean startsWith(int pos, String s) {
+        int len = s.length();
+        if (pos + len > end)
+            return false;
+        for (int i = 0; i < len; i++)
+            if (buf[pos + i] != s.charAt(i))
+                return false;
+        return true;
+    }
+
+    /** Returns the index after the next occurrence of s */
+
+    private final int skipTo(int pos, String s) {
+        char first = s.charAt(0);
+        while (pos < end) {
+            if (buf[pos] == first && startsWith(pos, s))
+                return pos + s.length();
+            pos++;
+        }
+        return end + 1;
+    }
+
+    /** Returns the index after the next '>' outside of quotes */
+
+    private final int skipTag(int pos) {
+        int quote = 0;
+        while (pos < end) {
+            char c = buf[pos++];
+            if (quote != 0) {
+                if (c == quote)
+                    quote = 0;
+            }
+            else if (c == '"' || c == '\'')
+                quote = c;
+            else if (c == '>')
+                return pos;
+        }
+        return end + 1;
+    }
+}
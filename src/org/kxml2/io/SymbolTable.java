@@ -0,0 +1,192 @@
+/* Copyright (c) 2002,2003, Stefan Haustein, Oberhausen, Rhld., Germany
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The  above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE. */
+
+package org.kxml2.io;
+
+/** 
+ * A table of canonical strings for element and attribute names, keyed
+ * on char ranges, so that a parser does not need to build a new String
+ * each time a name is repeated. All strings returned are interned.
+ * Tables created with the public constructor are synchronized and may
+ * be shared between parsers by setting them as the parser property
+ * http://xmlpull.org/v1/doc/properties.html#symbol-table. */
+
+public class SymbolTable {
+
+    static final private int MAX_SIZE = 8192;
+
+    final boolean shared;
+    private String[] symbols = new String[64];
+    private int[] hashes = new int[64];
+
+    /** 
+     * Prefix and local name of each symbol, filled in by split() when
+     * needed */
+
+    private String[][] qnames = new String[64][];
+    private int count;
+
+    /** Creates a table that may be shared between parsers */
+
+    public SymbolTable() {
+        this(true);
+    }
+
+    SymbolTable(boolean shared) {
+        this.shared = shared;
+    }
+
+    /** 
+     * Returns the interned string for the given chars. When the table
+     * is full, the chars are interned without being added. */
+
+    public String intern(char[] buf, int start, int len) {
+        if (shared) {
+            synchronized (this) {
+                return lookup(buf, start, len);
+            }
+        }
+        return lookup(buf, start, len);
+    }
+
+    /** 
+     * Returns the prefix (the part before the first ':', or null) and the
+     * local name of the given name. For symbols of this table, the split
+     * is computed once and both parts are symbols, so that splitting a
+     * name again allocates nothing. The array returned is shared and
+     * must not be modified. */
+
+    final String[] split(String name) {
+        if (shared) {
+            synchronized (this) {
+                return lookupSplit(name);
+            }
+        }
+        return lookupSplit(name);
+    }
+
+    /** Returns the number of symbols in the table */
+
+    public int size() {
+        return count;
+    }
+
+    private final String lookup(char[] buf, int start, int len) {
+
+        int end = start + len;
+        int h = 0;
+
+        for (int i = start; i < end; i++)
+            h = 31 * h + buf[i];
+
+        int mask = symbols.length - 1;
+        int i = (h ^ (h >>> 16)) & mask;
+
+        while (true) {
+            String s = symbols[i];
+            if (s == null)
+                break;
+            if (hashes[i] == h && s.length() == len) {
+                int j = 0;
+                while (j < len && s.charAt(j) == buf[start + j])
+                    j++;
+                if (j == len)
+                    return s;
+            }
+            i = (i + 1) & mask;
+        }
+
+        String s = new String(buf, start, len).intern();
+
+        if (count >= MAX_SIZE)
+            return s;
+
+        symbols[i] = s;
+        hashes[i] = h;
+
+        if (++count > (symbols.length >> 1) + (symbols.length >> 2))
+            rehash();
+
+        return s;
+    }
+
+    private final String[] lookupSplit(String name) {
+
+        int h = name.hashCode();
+        int mask = symbols.length - 1;
+        int i = (h ^ (h >>> 16)) & mask;
+
+        while (symbols[i] != null && symbols[i] != name)
+            i = (i + 1) & mask;
+
+        if (symbols[i] != null && qnames[i] != null)
+            return qnames[i];
+
+        int cut = name.indexOf(':');
+        String[] qname = new String[2];
+
+        if (cut == -1)
+            qname[1] = name;
+        else {
+            char[] chars = name.toCharArray();
+            qname[0] = lookup(chars, 0, cut);
+            qname[1] = lookup(chars, cut + 1, chars.length - cut - 1);
+        }
+
+        // the lookups may have moved the symbols
+
+        if (symbols[i] != name) {
+            mask = symbols.length - 1;
+            i = (h ^ (h >>> 16)) & mask;
+            while (symbols[i] != null && symbols[i] != name)
+                i = (i + 1) & mask;
+        }
+
+        if (symbols[i] != null)
+            qnames[i] = qname;
+
+        return qname;
+    }
+
+    private final void rehash() {
+
+        String[] oldSymbols = symbols;
+        int[] oldHashes = hashes;
+        String[][] oldQnames = qnames;
+        int size = oldSymbols.length << 1;
+        int mask = size - 1;
+
+        symbols = new String[size];
+        hashes = new int[size];
+        qnames = new String[size][];
+
+        for (int j = 0; j < oldSymbols.length; j++) {
+            if (oldSymbols[j] != null) {
+                int h = oldHashes[j];
+                int i = (h ^ (h >>> 16)) & mask;
+                while (symbols[i] != null)
+                    i = (i + 1) & mask;
+                symbols[i] = oldSymbols[j];
+                hashes[i] = h;
+                qnames[i] = oldQnames[j];
+            }
+        }
+    }
+}
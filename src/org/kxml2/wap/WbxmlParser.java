@@ -65,6 +65,12 @@ public class WbxmlParser implements XmlPullParser {
     
     private int attributeCount;
     private String[] attributes = new String[16];
+    
+    /** 
+     * Open addressing table of attribute indices + 1 for the duplicate
+     * attribute check, reused for all elements */
+    
+    private int[] attrTable = new int[16];
     private int nextId = -2;
     
     private Vector tables = new Vector();
@@ -568,19 +574,10 @@ public class WbxmlParser implements XmlPullParser {
                     attributes[i] = attrNs;
                     attributes[i + 1] = attrPrefix;
                     attributes[i + 2] = attrName;
-                    
-                    for (int j = (attributeCount << 2) - 4;
-                    j > i;
-                    j -= 4)
-                        if (attrName.equals(attributes[j + 2])
-                        && attrNs.equals(attributes[j]))
-                            exception(
-                            "Duplicate Attribute: {"
-                            + attrNs
-                            + "}"
-                            + attrName);
                 }
             }
+            
+            checkDuplicates(true);
         }
         
         int cut = name.indexOf(':');
@@ -925,15 +922,7 @@ public class WbxmlParser implements XmlPullParser {
         
         nspCounts[depth] = nspCounts[depth - 1];
         
-        for (int i = attributeCount - 1; i > 0; i--) {
-            for (int j = 0; j < i; j++) {
-                if (getAttributeName(i)
-                .equals(getAttributeName(j)))
-                    exception(
-                    "Duplicate Attribute: "
-                    + getAttributeName(i));
-            }
-        }
+        checkDuplicates(false);
         
         if (processNsp)
             adjustNsp();
@@ -946,6 +935,57 @@ public class WbxmlParser implements XmlPullParser {
         
     }
     
+    /** 
+     * Throws an exception if two attributes have the same name, or the
+     * same namespace and local name if byNamespace is set, in linear
+     * time using a hash table. */
+    
+    private final void checkDuplicates(boolean byNamespace)
+    throws XmlPullParserException {
+        
+        int n = attributeCount;
+        
+        if (n < 2)
+            return;
+        
+        int bits = 2;
+        while (1 << bits < n << 1)
+            bits++;
+        
+        int size = 1 << bits;
+        
+        if (attrTable.length < size)
+            attrTable = new int[size];
+        
+        int[] table = attrTable;
+        
+        for (int i = 0; i < size; i++)
+            table[i] = 0;
+        
+        for (int i = 0; i < n; i++) {
+            String ns = byNamespace ? attributes[i << 2] : null;
+            String name = attributes[(i << 2) + 2];
+            int h = name.hashCode();
+            if (ns != null)
+                h = h * 31 + ns.hashCode();
+            
+            int slot = (h * 0x9e3779b9) >>> (32 - bits);
+            
+            while (table[slot] != 0) {
+                int j = (table[slot] - 1) << 2;
+                if (name.equals(attributes[j + 2])
+                && (ns == null || ns.equals(attributes[j])))
+                    exception(
+                    "Duplicate Attribute: "
+                    + (byNamespace ? "{" + ns + "}" : "")
+                    + name);
+                slot = (slot + 1) & (size - 1);
+            }
+            
+            table[slot] = i + 1;
+        }
+    }
+    
     private final String[] ensureCapacity(
     String[] arr,
     int required) {
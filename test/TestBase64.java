@@ -0,0 +1,184 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+
+import junit.framework.TestCase;
+
+import org.kxml2.io.KXmlParser;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+public class TestBase64 extends TestCase {
+
+    static final String DIGITS =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+
+    static final String PROPERTY =
+        "http://xmlpull.org/v1/doc/properties.html#";
+
+    /** Encodes data with a CRLF after every lineLength chars, if > 0 */
+
+    static String encode(byte[] data, int lineLength) {
+        StringBuffer buf = new StringBuffer();
+
+        for (int i = 0; i < data.length; i += 3) {
+            int n = data.length - i;
+            int bits = (data[i] & 0xff) << 16;
+            if (n > 1)
+                bits |= (data[i + 1] & 0xff) << 8;
+            if (n > 2)
+                bits |= data[i + 2] & 0xff;
+
+            for (int j = 0; j < 4; j++) {
+                if (lineLength > 0 && buf.length() % (lineLength + 2) == lineLength)
+                    buf.append("\r\n");
+                buf.append(j <= n ? DIGITS.charAt((bits >> (18 - 6 * j)) & 63) : '=');
+            }
+        }
+        return buf.toString();
+    }
+
+    static byte[] data(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++)
+            data[i] = (byte) (i * 31 + (i >> 8));
+        return data;
+    }
+
+    /** 
+     * Decodes the content of the element b in the given document and
+     * checks that the parser continues with the element c */
+
+    static byte[] decode(KXmlParser parser) throws Exception {
+        parser.nextTag();
+        parser.nextTag();
+        assertEquals("b", parser.getName());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int count = parser.readBase64(out);
+
+        assertEquals(out.size(), count);
+        assertEquals(XmlPullParser.END_TAG, parser.getEventType());
+        assertEquals("b", parser.getName());
+        assertEquals(XmlPullParser.START_TAG, parser.nextTag());
+        assertEquals("c", parser.getName());
+        return out.toByteArray();
+    }
+
+    static KXmlParser parser(String doc, boolean bytes) throws Exception {
+        KXmlParser parser = new KXmlParser();
+        parser.setProperty(PROPERTY + "buffer-size", new Integer(128));
+        if (bytes)
+            parser.setInput(new ByteArrayInputStream(doc.getBytes("UTF-8")), null);
+        else
+            parser.setInput(new StringReader(doc));
+        return parser;
+    }
+
+    static void assertBytes(byte[] expected, byte[] actual) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++)
+            assertEquals("byte " + i, expected[i], actual[i]);
+    }
+
+    /** All padding variants, and output beyond the 1024 byte buffer */
+
+    public void testLengths() throws Exception {
+        for (int length = 0; length < 3000; length += length < 20 ? 1 : 97) {
+            byte[] data = data(length);
+            String doc = "<r><b>" + encode(data, 76) + "</b><c/></r>";
+
+            assertBytes(data, decode(parser(doc, false)));
+            assertBytes(data, decode(parser(doc, true)));
+        }
+    }
+
+    /** 
+     * Moves the content across the boundaries of the 128 char input
+     * buffer, which splits the quads, the CRLFs and the padding */
+
+    public void testBufferBoundaries() throws Exception {
+        byte[] data = data(100);
+        String content = encode(data, 10);
+
+        for (int pad = 0; pad < 140; pad++) {
+            StringBuffer doc = new StringBuffer("<r>");
+            for (int i = 0; i < pad; i++)
+                doc.append(' ');
+            doc.append("<b>" + content + "</b><c/></r>");
+
+            assertBytes(data, decode(parser(doc.toString(), false)));
+            assertBytes(data, decode(parser(doc.toString(), true)));
+        }
+    }
+
+    public void testMarkup() throws Exception {
+        byte[] data = data(40);
+        String content = encode(data, 0);
+        String doc =
+            "<r><b>\n " + content.substring(0, 5) + "<!-- c -->"
+                + content.substring(5, 9) + "<?pi x?><![CDATA["
+                + content.substring(9, 15) + "]]>&#10;&#"
+                + (int) content.charAt(15) + ";"
+                + content.substring(16) + "\n</b><c/></r>";
+
+        assertBytes(data, decode(parser(doc, false)));
+    }
+
+    /** CDATA sections split at the text chunk size are continued */
+
+    public void testChunkedCdata() throws Exception {
+        byte[] data = data(200);
+        String doc = "<r><b><![CDATA[" + encode(data, 20) + "]]></b><c/></r>";
+
+        KXmlParser parser = parser(doc, true);
+        parser.setProperty(PROPERTY + "text-chunk-size", new Integer(7));
+        assertBytes(data, decode(parser));
+    }
+
+    public void testEmpty() throws Exception {
+        assertEquals(0, decode(parser("<r><b/><c/></r>", false)).length);
+        assertEquals(0, decode(parser("<r><b> </b><c/></r>", false)).length);
+    }
+
+    static void malformed(String content) throws Exception {
+        KXmlParser parser = parser("<b>" + content + "</b>", false);
+        parser.next();
+        try {
+            parser.readBase64(new ByteArrayOutputStream());
+            fail("accepted: " + content);
+        }
+        catch (XmlPullParserException e) {
+        }
+    }
+
+    public void testMalformed() throws Exception {
+        malformed("AB*C");
+        malformed("ABC");
+        malformed("A===");
+        malformed("AB==CD==");
+        malformed("AB<x/>CD");
+    }
+
+    public void testPrecondition() throws Exception {
+        KXmlParser parser = parser("<b>AAAA</b>", false);
+        try {
+            parser.readBase64(new ByteArrayOutputStream());
+            fail("START_DOCUMENT accepted");
+        }
+        catch (XmlPullParserException e) {
+        }
+
+        parser = new KXmlParser();
+        parser.setFeedInput("UTF-8");
+        byte[] doc = "<b>AAAA</b>".getBytes("UTF-8");
+        parser.feed(doc, 0, doc.length);
+        parser.next();
+        try {
+            parser.readBase64(new ByteArrayOutputStream());
+            fail("feed input accepted");
+        }
+        catch (XmlPullParserException e) {
+        }
+    }
+}
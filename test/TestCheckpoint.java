@@ -0,0 +1,153 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+
+import junit.framework.TestCase;
+
+import org.kxml2.io.KXmlParser;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+public class TestCheckpoint extends TestCase {
+
+    static final String DOC =
+        "<?xml version='1.0' encoding='UTF-8'?>\n"
+            + "<r xmlns='urn:r' xmlns:p='urn:p'>\u00e4\u00f6\u00fc &e; <p:a b='\u65e5\u672c'>"
+            + "\n\ud83d\ude00 text\r\n<p:b xmlns:p='urn:q'/>&amp;&#x1F600;</p:a>"
+            + "<!-- c --><![CDATA[\u00df]]><c>&e;&e;</c>\n</r>";
+
+    static final String FEATURE =
+        "http://xmlpull.org/v1/doc/features.html#";
+    static final String PROPERTY =
+        "http://xmlpull.org/v1/doc/properties.html#";
+
+    static String describe(KXmlParser parser) throws XmlPullParserException {
+        StringBuffer buf = new StringBuffer();
+        buf.append(XmlPullParser.TYPES[parser.getEventType()]);
+        buf.append(" {" + parser.getNamespace() + "}" + parser.getName());
+        buf.append(" " + parser.getText());
+        buf.append(" " + parser.getDepth());
+        buf.append(" @" + parser.getLineNumber() + ":" + parser.getColumnNumber());
+        buf.append(" " + parser.getEventEndOffset());
+        buf.append("/" + parser.getEventEndByteOffset());
+        for (int i = 0; i < parser.getAttributeCount(); i++)
+            buf.append(" " + parser.getAttributeName(i) + "="
+                + parser.getAttributeValue(i));
+        return buf.append('\n').toString();
+    }
+
+    /** Returns a parser with namespace processing */
+
+    static KXmlParser parser() throws XmlPullParserException {
+        KXmlParser parser = new KXmlParser();
+        parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+        return parser;
+    }
+
+    /** Sets the input to DOC, which uses the custom entity e */
+
+    static void setInput(KXmlParser parser) throws Exception {
+        parser.setInput(new ByteArrayInputStream(DOC.getBytes("UTF-8")), null);
+        parser.defineEntityReplacementText("e", "\u00e9\u20ac");
+    }
+
+    static String rest(KXmlParser parser) throws Exception {
+        StringBuffer buf = new StringBuffer();
+        while (parser.next() != XmlPullParser.END_DOCUMENT)
+            buf.append(describe(parser));
+        return buf.toString();
+    }
+
+    static byte[] checkpoint(KXmlParser parser) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        parser.writeCheckpoint(out);
+        return out.toByteArray();
+    }
+
+    static KXmlParser resume(byte[] checkpoint, byte[] data) throws Exception {
+        KXmlParser parser = new KXmlParser();
+        parser.resume(
+            new ByteArrayInputStream(checkpoint),
+            new ByteArrayInputStream(data));
+        return parser;
+    }
+
+    /** 
+     * Resumes at every event of a UTF-8 document with multi-byte chars
+     * and compares the remaining events, positions and offsets */
+
+    public void testEveryEvent() throws Exception {
+        byte[] data = DOC.getBytes("UTF-8");
+
+        for (int n = 0; true; n++) {
+            KXmlParser parser = parser();
+            setInput(parser);
+            for (int i = 0; i < n; i++)
+                parser.next();
+            if (parser.getEventType() == XmlPullParser.END_DOCUMENT)
+                break;
+
+            byte[] checkpoint = checkpoint(parser);
+            assertEquals("event " + n, rest(parser), rest(resume(checkpoint, data)));
+        }
+    }
+
+    public void testFeatures() throws Exception {
+        KXmlParser parser = parser();
+        parser.setFeature(FEATURE + "relaxed", true);
+        parser.setFeature(FEATURE + "names-interned", true);
+        parser.setFeature(FEATURE + "track-position", false);
+        parser.setProperty(PROPERTY + "max-depth", new Integer(7));
+        parser.setProperty(PROPERTY + "text-chunk-size", new Integer(4));
+        setInput(parser);
+        parser.nextTag();
+
+        KXmlParser resumed = resume(checkpoint(parser), DOC.getBytes("UTF-8"));
+
+        assertTrue(resumed.getFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES));
+        assertTrue(resumed.getFeature(FEATURE + "relaxed"));
+        assertTrue(resumed.getFeature(FEATURE + "names-interned"));
+        assertFalse(resumed.getFeature(FEATURE + "track-position"));
+        assertEquals(new Integer(7), resumed.getProperty(PROPERTY + "max-depth"));
+        assertNull(resumed.getProperty(PROPERTY + "max-attributes"));
+        assertEquals(new Integer(4), resumed.getProperty(PROPERTY + "text-chunk-size"));
+
+        // the text is returned in chunks of four chars
+
+        assertEquals(XmlPullParser.TEXT, resumed.next());
+        assertEquals("\u00e4\u00f6\u00fc ", resumed.getText());
+    }
+
+    /** The entity expansion count continues from the checkpoint */
+
+    public void testEntityExpansion() throws Exception {
+        byte[] data = DOC.getBytes("UTF-8");
+        KXmlParser parser = parser();
+        parser.setProperty(PROPERTY + "max-entity-expansion", new Integer(6));
+        setInput(parser);
+
+        while (!"a".equals(parser.getName()))
+            parser.next();
+
+        KXmlParser resumed = resume(checkpoint(parser), data);
+        try {
+            while (resumed.next() != XmlPullParser.END_DOCUMENT);
+            fail("entity expansion limit not restored");
+        }
+        catch (XmlPullParserException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("max-entity-expansion"));
+        }
+    }
+
+    public void testCharInputRejected() throws Exception {
+        KXmlParser parser = new KXmlParser();
+        parser.setInput(new StringReader(DOC));
+        parser.next();
+        try {
+            checkpoint(parser);
+            fail("char input accepted");
+        }
+        catch (XmlPullParserException e) {
+        }
+    }
+}
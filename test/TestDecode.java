@@ -0,0 +1,168 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+import junit.framework.TestCase;
+
+import org.kxml2.io.KXmlParser;
+import org.xmlpull.v1.XmlPullParser;
+
+public class TestDecode extends TestCase {
+
+    /** well-formed sequences of all lengths, and malformed ones */
+
+    static final int[][] SEQUENCES = {
+        { 0x41 },
+        { 0xc3, 0xa4 },
+        { 0xe2, 0x82, 0xac },
+        { 0xef, 0xbf, 0xbf },
+        { 0xf0, 0x9f, 0x98, 0x80 },
+        { 0xf4, 0x8f, 0xbf, 0xbf },
+        { 0xc0, 0xbc }, // overlong '<'
+        { 0xc1, 0xbf },
+        { 0xe0, 0x80, 0xbc }, // overlong '<'
+        { 0xe0, 0x9f, 0xbf },
+        { 0xf0, 0x80, 0x80, 0xbc }, // overlong '<'
+        { 0xf0, 0x8f, 0xbf, 0xbf },
+        { 0xed, 0xa0, 0x80 }, // surrogate
+        { 0xed, 0xbf, 0xbf },
+        { 0xed, 0xa0, 0x41 },
+        { 0xed, 0x9f, 0xbf }, // U+D7FF
+        { 0xf4, 0x90, 0x80, 0x80 }, // above U+10FFFF
+        { 0xf5, 0x80, 0x80, 0x80 },
+        { 0xff },
+        { 0x80 },
+        { 0xbf, 0x41 },
+        { 0xc3 }, // truncated
+        { 0xe2, 0x82 },
+        { 0xf0, 0x9f, 0x98 },
+        { 0xe2, 0x41, 0xac },
+        { 0xf0, 0x9f, 0x41, 0x80 }
+    };
+
+    static byte[] document(int[] sequence, int pad) {
+        byte[] data = new byte[3 + pad + sequence.length + 4];
+        int n = 0;
+        data[n++] = '<';
+        data[n++] = 'r';
+        data[n++] = '>';
+        for (int i = 0; i < pad; i++)
+            data[n++] = 'x';
+        for (int i = 0; i < sequence.length; i++)
+            data[n++] = (byte) sequence[i];
+        data[n++] = '<';
+        data[n++] = '/';
+        data[n++] = 'r';
+        data[n++] = '>';
+        return data;
+    }
+
+    /** Returns the text of the root element as decoded by the JDK */
+
+    static String expected(byte[] data) throws IOException {
+        InputStreamReader reader =
+            new InputStreamReader(new ByteArrayInputStream(data), "UTF-8");
+        StringBuffer buf = new StringBuffer();
+        int c;
+        while ((c = reader.read()) != -1)
+            buf.append((char) c);
+        return buf.toString().substring(3, buf.length() - 4);
+    }
+
+    static String text(KXmlParser parser) throws Exception {
+        assertEquals(XmlPullParser.START_TAG, parser.next());
+        StringBuffer buf = new StringBuffer();
+        while (parser.next() == XmlPullParser.TEXT)
+            buf.append(parser.getText());
+        assertEquals(XmlPullParser.END_TAG, parser.getEventType());
+        assertEquals(XmlPullParser.END_DOCUMENT, parser.next());
+        return buf.toString();
+    }
+
+    /** Returns at most the given number of bytes per read */
+
+    static class Trickle extends InputStream {
+
+        InputStream in;
+        int max;
+
+        Trickle(byte[] data, int max) {
+            in = new ByteArrayInputStream(data);
+            this.max = max;
+        }
+
+        public int read() throws IOException {
+            return in.read();
+        }
+
+        public int read(byte[] buf, int off, int len) throws IOException {
+            return in.read(buf, off, len < max ? len : max);
+        }
+    }
+
+    /** 
+     * Moves each sequence across the boundaries of the 128 byte buffer
+     * and of reads returning one to three bytes */
+
+    public void testStream() throws Exception {
+        for (int s = 0; s < SEQUENCES.length; s++)
+            for (int pad = 120; pad < 130; pad++)
+                for (int max = 1; max <= 4; max++) {
+                    byte[] data = document(SEQUENCES[s], pad);
+                    KXmlParser parser = new KXmlParser();
+                    parser.setProperty(
+                        "http://xmlpull.org/v1/doc/properties.html#buffer-size",
+                        new Integer(128));
+                    parser.setInput(
+                        max == 4 ? new ByteArrayInputStream(data) : new Trickle(data, max),
+                        "UTF-8");
+                    assertEquals(
+                        "sequence " + s + " pad " + pad + " max " + max,
+                        expected(data),
+                        text(parser));
+                }
+    }
+
+    public void testByteArrayOffset() throws Exception {
+        for (int s = 0; s < SEQUENCES.length; s++) {
+            byte[] data = document(SEQUENCES[s], 2);
+            byte[] buf = new byte[data.length + 10];
+            System.arraycopy(data, 0, buf, 5, data.length);
+
+            // the bytes around the range start a sequence and are
+            // continuation bytes, which must not be read
+
+            buf[4] = (byte) 0xe2;
+            buf[5 + data.length] = (byte) 0x82;
+
+            KXmlParser parser = new KXmlParser();
+            parser.setInput(buf, 5, data.length, "UTF-8");
+            assertEquals("sequence " + s, expected(data), text(parser));
+        }
+    }
+
+    public void testFeed() throws Exception {
+        for (int s = 0; s < SEQUENCES.length; s++) {
+            byte[] data = document(SEQUENCES[s], 1);
+            for (int cut = 0; cut <= data.length; cut++) {
+                KXmlParser parser = new KXmlParser();
+                parser.setFeedInput("UTF-8");
+                parser.feed(data, 0, cut);
+                parser.feed(data, cut, data.length - cut);
+                parser.endInput();
+                assertEquals("sequence " + s + " cut " + cut, expected(data), text(parser));
+            }
+        }
+    }
+
+    /** An overlong '<' is not markup */
+
+    public void testOverlongMarkup() throws Exception {
+        byte[] data = { '<', 'r', '>', (byte) 0xe0, (byte) 0x80, (byte) 0xbc,
+            'x', '/', '>', '<', '/', 'r', '>' };
+        KXmlParser parser = new KXmlParser();
+        parser.setInput(new ByteArrayInputStream(data), "UTF-8");
+        assertEquals("\ufffd\ufffd\ufffdx/>", text(parser));
+    }
+}
@@ -0,0 +1,106 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+
+import junit.framework.TestCase;
+
+import org.kxml2.io.KXmlParser;
+import org.kxml2.wap.WbxmlParser;
+import org.kxml2.wap.WbxmlSerializer;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+public class TestDuplicates extends TestCase {
+
+    static String[] names(int count) {
+        String[] names = new String[count];
+        for (int i = 0; i < count; i++)
+            names[i] = "a" + i;
+        return names;
+    }
+
+    static String xml(String[] names) {
+        StringBuffer buf = new StringBuffer("<r xmlns:p='urn:x' xmlns:q='urn:x'");
+        for (int i = 0; i < names.length; i++)
+            buf.append(' ').append(names[i]).append("='v'");
+        return buf.append("/>").toString();
+    }
+
+    static XmlPullParser wbxml(String[] names) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        WbxmlSerializer serializer = new WbxmlSerializer();
+        serializer.setOutput(out, null);
+        serializer.startDocument(null, null);
+        serializer.startTag(null, "r");
+        for (int i = 0; i < names.length; i++)
+            serializer.attribute(null, names[i], "v");
+        serializer.endTag(null, "r");
+        serializer.endDocument();
+
+        WbxmlParser parser = new WbxmlParser();
+        parser.setInput(new ByteArrayInputStream(out.toByteArray()), null);
+        return parser;
+    }
+
+    static XmlPullParser xml(String[] names, boolean nsp) throws Exception {
+        KXmlParser parser = new KXmlParser();
+        parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, nsp);
+        parser.setInput(new StringReader(xml(names)));
+        return parser;
+    }
+
+    static void assertDuplicate(XmlPullParser parser, String message)
+        throws Exception {
+
+        try {
+            parser.next();
+            fail("duplicate accepted");
+        }
+        catch (XmlPullParserException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith(message));
+        }
+    }
+
+    public void testUnique() throws Exception {
+        String[] names = names(300);
+
+        XmlPullParser parser = xml(names, false);
+        parser.next();
+        assertEquals(302, parser.getAttributeCount());
+
+        parser = wbxml(names);
+        parser.next();
+        assertEquals(300, parser.getAttributeCount());
+    }
+
+    public void testDuplicate() throws Exception {
+        String[] names = names(300);
+        names[299] = "a17";
+
+        assertDuplicate(xml(names, false), "Duplicate Attribute: a17");
+        assertDuplicate(wbxml(names), "Duplicate Attribute: a17");
+
+        names = new String[] { "a", "b", "a" };
+        assertDuplicate(xml(names, true), "Duplicate Attribute: a");
+        assertDuplicate(wbxml(names), "Duplicate Attribute: a");
+    }
+
+    /** Different prefixes bound to the same namespace */
+
+    public void testNamespaces() throws Exception {
+        String[] names = { "p:a", "q:a" };
+
+        XmlPullParser parser = xml(names, false);
+        parser.next();
+        assertEquals(4, parser.getAttributeCount());
+
+        assertDuplicate(xml(names, true), "Duplicate Attribute: {urn:x}a");
+    }
+
+    public void testRelaxed() throws Exception {
+        XmlPullParser parser = xml(new String[] { "a", "a" }, false);
+        parser.setFeature("http://xmlpull.org/v1/doc/features.html#relaxed", true);
+        parser.next();
+        assertEquals(4, parser.getAttributeCount());
+    }
+}
@@ -0,0 +1,137 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+
+import junit.framework.TestCase;
+
+import org.kxml2.io.ElementIndex;
+import org.kxml2.io.KXmlParser;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+public class TestElementIndex extends TestCase {
+
+    static final String DOC =
+        "<?xml version='1.0' encoding='UTF-8'?>\n"
+            + "<c:catalog xmlns:c='urn:c' xmlns:p='urn:p'>"
+            + "<c:item id='a'><c:name>\u00e4\u20ac</c:name><p:x/></c:item>\n"
+            + "<c:group xmlns:p='urn:q'>"
+            + "<c:item id='b'><p:x>\ud83d\ude00</p:x></c:item>"
+            + "<c:item><c:name>no key</c:name></c:item>"
+            + "</c:group>"
+            + "<c:item id='a'>second a</c:item>"
+            + "</c:catalog>";
+
+    static ElementIndex index(byte[] data, String key) throws Exception {
+        KXmlParser parser = new KXmlParser();
+        parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+        parser.setInput(new ByteArrayInputStream(data), null);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ElementIndex.write(parser, "item", key, out);
+        return ElementIndex.read(new ByteArrayInputStream(out.toByteArray()));
+    }
+
+    /** Returns the events of the element at the given entry */
+
+    static String open(ElementIndex index, byte[] data, ElementIndex.Entry entry)
+        throws Exception {
+
+        KXmlParser parser =
+            index.openAt(new ByteArrayInputStream(data), entry);
+        StringBuffer buf = new StringBuffer();
+
+        while (parser.next() != XmlPullParser.END_DOCUMENT) {
+            switch (parser.getEventType()) {
+                case XmlPullParser.START_TAG :
+                    buf.append("<{" + parser.getNamespace() + "}" + parser.getName());
+                    for (int i = 0; i < parser.getAttributeCount(); i++)
+                        buf.append(" " + parser.getAttributeName(i) + "="
+                            + parser.getAttributeValue(i));
+                    buf.append(">");
+                    break;
+                case XmlPullParser.END_TAG :
+                    buf.append("</" + parser.getName() + ">");
+                    break;
+                case XmlPullParser.TEXT :
+                    buf.append(parser.getText());
+                    break;
+            }
+        }
+        return buf.toString();
+    }
+
+    public void testEntries() throws Exception {
+        byte[] data = DOC.getBytes("UTF-8");
+        ElementIndex index = index(data, "id");
+
+        assertEquals(4, index.size());
+        assertEquals("a", index.entryAt(0).key);
+        assertEquals("b", index.entryAt(1).key);
+        assertEquals("2", index.entryAt(2).key);
+        assertEquals("a", index.entryAt(3).key);
+
+        // the first entry with a key is returned
+
+        assertSame(index.entryAt(0), index.get("a"));
+        assertNull(index.get("c"));
+
+        for (int i = 0; i < index.size(); i++) {
+            ElementIndex.Entry entry = index.entryAt(i);
+            String source = new String(
+                data,
+                (int) entry.start,
+                (int) (entry.end - entry.start),
+                "UTF-8");
+            assertTrue(source, source.startsWith("<c:item"));
+            assertTrue(source, source.endsWith("</c:item>"));
+        }
+    }
+
+    public void testPositionKeys() throws Exception {
+        ElementIndex index = index(DOC.getBytes("UTF-8"), null);
+        assertEquals(4, index.size());
+        for (int i = 0; i < index.size(); i++)
+            assertEquals(String.valueOf(i), index.entryAt(i).key);
+    }
+
+    public void testOpenAt() throws Exception {
+        byte[] data = DOC.getBytes("UTF-8");
+        ElementIndex index = index(data, "id");
+
+        assertEquals(
+            "<{urn:c}item id=a><{urn:c}name>\u00e4\u20ac</name><{urn:p}x></x></item>",
+            open(index, data, index.get("a")));
+
+        // the redeclared prefix of the enclosing group is in scope
+
+        assertEquals(
+            "<{urn:c}item id=b><{urn:q}x>\ud83d\ude00</x></item>",
+            open(index, data, index.get("b")));
+
+        assertEquals(
+            "<{urn:c}item id=a>second a</item>",
+            open(index, data, index.entryAt(3)));
+    }
+
+    public void testCharInputRejected() throws Exception {
+        KXmlParser parser = new KXmlParser();
+        parser.setInput(new StringReader(DOC));
+        try {
+            ElementIndex.write(parser, "item", null, new ByteArrayOutputStream());
+            fail("char input accepted");
+        }
+        catch (XmlPullParserException e) {
+        }
+    }
+
+    public void testCorruptIndex() throws Exception {
+        try {
+            ElementIndex.read(new ByteArrayInputStream(new byte[8]));
+            fail("corrupt index accepted");
+        }
+        catch (IOException e) {
+        }
+    }
+}
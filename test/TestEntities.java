@@ -0,0 +1,175 @@
+import java.io.StringReader;
+
+import junit.framework.TestCase;
+
+import org.kxml2.io.KXmlParser;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+public class TestEntities extends TestCase {
+
+    static KXmlParser parser(String doc, boolean relaxed) throws Exception {
+        KXmlParser parser = new KXmlParser();
+        parser.setFeature("http://xmlpull.org/v1/doc/features.html#relaxed", relaxed);
+        parser.setInput(new StringReader(doc));
+        return parser;
+    }
+
+    /** Returns the attribute value and the text of <r a='ref'>ref</r> */
+
+    static String[] parse(String ref, boolean relaxed) throws Exception {
+        KXmlParser parser = parser("<r a='" + ref + "'>x" + ref + "y</r>", relaxed);
+        parser.next();
+        String value = parser.getAttributeValue(0);
+        assertEquals(XmlPullParser.TEXT, parser.next());
+        String text = parser.getText();
+        assertEquals(XmlPullParser.END_TAG, parser.next());
+        return new String[] { value, text };
+    }
+
+    static void assertDecoded(String ref, String expected) throws Exception {
+        for (int relaxed = 0; relaxed < 2; relaxed++) {
+            String[] result = parse(ref, relaxed == 1);
+            assertEquals(ref, expected, result[0]);
+            assertEquals(ref, "x" + expected + "y", result[1]);
+        }
+
+        KXmlParser parser = parser("<r>" + ref + "</r>", false);
+        parser.nextToken();
+        assertEquals(XmlPullParser.ENTITY_REF, parser.nextToken());
+        assertEquals(ref.substring(1, ref.length() - 1), parser.getName());
+        assertEquals(expected, parser.getText());
+    }
+
+    public void testSupplementaryReferences() throws Exception {
+        assertDecoded("&#x1F600;", "\ud83d\ude00");
+        assertDecoded("&#x1f600;", "\ud83d\ude00");
+        assertDecoded("&#128512;", "\ud83d\ude00");
+        assertDecoded("&#x10000;", "\ud800\udc00");
+        assertDecoded("&#65536;", "\ud800\udc00");
+        assertDecoded("&#x10FFFF;", "\udbff\udfff");
+        assertDecoded("&#1114111;", "\udbff\udfff");
+    }
+
+    public void testBmpReferences() throws Exception {
+        assertDecoded("&#x41;", "A");
+        assertDecoded("&#0065;", "A");
+        assertDecoded("&#xD7FF;", "\ud7ff");
+        assertDecoded("&#xE000;", "\ue000");
+        assertDecoded("&#xFFFD;", "\ufffd");
+    }
+
+    static final String[] ILLEGAL = {
+        "&#xD800;",
+        "&#xDFFF;",
+        "&#55296;",
+        "&#x110000;",
+        "&#1114112;",
+        "&#x7FFFFFFFF;",
+        "&#;",
+        "&#x;",
+        "&#xZZ;",
+        "&#12a;",
+        "&#-1;",
+        "&# 1;" };
+
+    public void testIllegalReferencesStrict() throws Exception {
+        for (int i = 0; i < ILLEGAL.length; i++) {
+            String ref = ILLEGAL[i];
+            String[] docs = { "<r>" + ref + "</r>", "<r a='" + ref + "'/>" };
+            for (int d = 0; d < docs.length; d++)
+                for (int token = 0; token < 2; token++) {
+                    KXmlParser parser = parser(docs[d], false);
+                    try {
+                        while ((token == 1 ? parser.nextToken() : parser.next())
+                            != XmlPullParser.END_DOCUMENT) {
+                        }
+                        fail("accepted: " + docs[d]);
+                    }
+                    catch (XmlPullParserException e) {
+                    }
+                }
+        }
+    }
+
+    /** In relaxed mode, illegal references are kept as they are */
+
+    public void testIllegalReferencesRelaxed() throws Exception {
+        for (int i = 0; i < ILLEGAL.length; i++) {
+            String ref = ILLEGAL[i];
+            if (ref.indexOf(' ') != -1)
+                continue;
+
+            String[] result = parse(ref, true);
+            assertEquals(ref, result[0]);
+            assertTrue(result[1], result[1].endsWith("x" + ref + "y"));
+
+            KXmlParser parser = parser("<r>" + ref + "</r>", true);
+            parser.nextToken();
+            int type = parser.nextToken();
+            if (type == XmlPullParser.COMMENT)
+                type = parser.nextToken();
+            assertEquals(XmlPullParser.ENTITY_REF, type);
+            assertEquals(ref, parser.getText());
+        }
+    }
+
+    public void testPredefinedAfterDefine() throws Exception {
+        String doc = "<r a='&amp;&e;&lt;'>&amp;&lt;&gt;&quot;&apos;&e;&#x41;</r>";
+        KXmlParser parser = parser(doc, false);
+        parser.defineEntityReplacementText("e", "E");
+        parser.next();
+        assertEquals("&E<", parser.getAttributeValue(0));
+        parser.next();
+        assertEquals("&<>\"'EA", parser.getText());
+
+        // redefined predefined entities use the new text
+
+        parser = parser(doc, false);
+        parser.defineEntityReplacementText("e", "E");
+        parser.defineEntityReplacementText("amp", "AMP");
+        parser.next();
+        assertEquals("AMPE<", parser.getAttributeValue(0));
+        parser.next();
+        assertEquals("AMP<>\"'EA", parser.getText());
+
+        // the definitions apply to one input only
+
+        parser.setInput(new StringReader("<r>&amp;</r>"));
+        parser.next();
+        parser.next();
+        assertEquals("&", parser.getText());
+    }
+
+    public void testUnknownEntities() throws Exception {
+        String doc = "<r a='1&foo;2'>x&foo;y&AMP;z</r>";
+        try {
+            KXmlParser parser = parser(doc, false);
+            parser.next();
+            fail("unknown entity accepted");
+        }
+        catch (XmlPullParserException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("unresolved: &foo;"));
+        }
+
+        KXmlParser parser = parser(doc, true);
+        parser.next();
+        assertEquals("12", parser.getAttributeValue(0));
+        assertEquals(XmlPullParser.TEXT, parser.next());
+        assertTrue(parser.getText(), parser.getText().endsWith("xyz"));
+        assertEquals(XmlPullParser.END_TAG, parser.next());
+
+        // in token mode, unknown entities are reported unresolved
+
+        for (int relaxed = 0; relaxed < 2; relaxed++) {
+            parser = parser("<r>x&foo;y</r>", relaxed == 1);
+            parser.nextToken();
+            parser.nextToken();
+            assertEquals(XmlPullParser.ENTITY_REF, parser.nextToken());
+            assertEquals("foo", parser.getName());
+            assertNull(parser.getText());
+            assertEquals(XmlPullParser.TEXT, parser.nextToken());
+            assertEquals("y", parser.getText());
+        }
+    }
+}
@@ -0,0 +1,289 @@
+import java.io.ByteArrayInputStream;
+
+import junit.framework.TestCase;
+
+import org.kxml2.io.KXmlParser;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+public class TestFeed extends TestCase {
+
+    static final String DOC =
+        "<?xml version='1.0'?>\n"
+            + "<r a='\u00e9t\u00e9'>\u65e5\u672c\u8a9e text &amp; more"
+            + "<!-- c --><![CDATA[<x>]]><e b=\"\u20ac\"/>"
+            + "\ud83d\ude00 &#x1F600;</r>";
+
+    static String events(KXmlParser parser, byte[] data, int[] cuts)
+        throws Exception {
+
+        StringBuffer buf = new StringBuffer();
+        int pos = 0;
+        int c = 0;
+
+        while (true) {
+            int type = parser.next();
+            if (type == KXmlParser.NEED_INPUT) {
+                if (c < cuts.length) {
+                    parser.feed(data, pos, cuts[c] - pos);
+                    pos = cuts[c++];
+                }
+                else {
+                    parser.feed(data, pos, data.length - pos);
+                    pos = data.length;
+                    parser.endInput();
+                }
+                continue;
+            }
+            buf.append(describe(parser));
+            if (type == XmlPullParser.END_DOCUMENT)
+                return buf.toString();
+        }
+    }
+
+    static String describe(XmlPullParser parser)
+        throws XmlPullParserException {
+
+        StringBuffer buf = new StringBuffer();
+        buf.append(XmlPullParser.TYPES[parser.getEventType()]);
+        buf.append(' ').append(parser.getName());
+        buf.append(' ').append(parser.getText());
+        for (int i = 0; i < parser.getAttributeCount(); i++)
+            buf.append(' ').append(parser.getAttributeName(i)).append('=').append(
+                parser.getAttributeValue(i));
+        return buf.append('\n').toString();
+    }
+
+    static String expected(byte[] data) throws Exception {
+        KXmlParser parser = new KXmlParser();
+        parser.setInput(new ByteArrayInputStream(data), "UTF-8");
+        StringBuffer buf = new StringBuffer();
+        while (parser.next() != XmlPullParser.END_DOCUMENT)
+            buf.append(describe(parser));
+        return buf.append(describe(parser)).toString();
+    }
+
+    public void testEverySplitPoint() throws Exception {
+        byte[] data = DOC.getBytes("UTF-8");
+        String expected = expected(data);
+
+        // includes cuts inside multi-byte chars, names, entities and
+        // the CDATA markers
+
+        for (int cut = 0; cut <= data.length; cut++) {
+            KXmlParser parser = new KXmlParser();
+            parser.setFeedInput("UTF-8");
+            assertEquals(
+                "cut at " + cut,
+                expected,
+                events(parser, data, new int[] { cut }));
+        }
+    }
+
+    public void testSingleBytes() throws Exception {
+        byte[] data = DOC.getBytes("UTF-8");
+        int[] cuts = new int[data.length];
+        for (int i = 0; i < cuts.length; i++)
+            cuts[i] = i + 1;
+
+        KXmlParser parser = new KXmlParser();
+        parser.setFeedInput(null);
+        assertEquals(expected(data), events(parser, data, cuts));
+    }
+
+    public void testNeedInput() throws Exception {
+        KXmlParser parser = new KXmlParser();
+        parser.setFeedInput("UTF-8");
+        assertEquals(KXmlParser.NEED_INPUT, parser.next());
+
+        byte[] data = "<r><ab c='1".getBytes("UTF-8");
+        parser.feed(data, 0, data.length);
+        assertEquals(XmlPullParser.START_TAG, parser.next());
+        assertEquals("r", parser.getName());
+        assertEquals(KXmlParser.NEED_INPUT, parser.next());
+        assertEquals(KXmlParser.NEED_INPUT, parser.next());
+
+        data = "'/></r>".getBytes("UTF-8");
+        parser.feed(data, 0, data.length);
+        assertEquals(XmlPullParser.START_TAG, parser.next());
+        assertEquals("ab", parser.getName());
+        assertEquals("1", parser.getAttributeValue(null, "c"));
+        assertEquals(XmlPullParser.END_TAG, parser.next());
+        assertEquals(XmlPullParser.END_TAG, parser.next());
+        assertEquals(KXmlParser.NEED_INPUT, parser.next());
+
+        parser.endInput();
+        assertEquals(XmlPullParser.END_DOCUMENT, parser.next());
+    }
+
+    public void testTruncatedInput() throws Exception {
+        KXmlParser parser = new KXmlParser();
+        parser.setFeedInput("UTF-8");
+        byte[] data = "<r><a".getBytes("UTF-8");
+        parser.feed(data, 0, data.length);
+        parser.endInput();
+        assertEquals(XmlPullParser.START_TAG, parser.next());
+        try {
+            parser.next();
+            fail("truncated start tag accepted");
+        }
+        catch (XmlPullParserException e) {
+        }
+    }
+
+    static final String CHUNK =
+        "http://xmlpull.org/v1/doc/properties.html#text-chunk-size";
+
+    /** 
+     * Feeds the data byte by byte, returns the text of the events up to
+     * the end tag of the root, each followed by '|'. TEXT events must
+     * not exceed the chunk size of 16 chars. */
+
+    static String fedText(KXmlParser parser, byte[] data, boolean token)
+        throws Exception {
+
+        StringBuffer buf = new StringBuffer();
+        int pos = 0;
+
+        while (true) {
+            int type = token ? parser.nextToken() : parser.next();
+            if (type == KXmlParser.NEED_INPUT) {
+                parser.feed(data, pos++, 1);
+                continue;
+            }
+            if (type == XmlPullParser.END_TAG && parser.getDepth() == 1)
+                return buf.toString();
+            if (type == XmlPullParser.TEXT) {
+                String text = parser.getText();
+                assertTrue(text, text.length() <= 16);
+                buf.append(text).append('|');
+            }
+            else if (type == XmlPullParser.ENTITY_REF)
+                buf.append(parser.getText()).append('|');
+        }
+    }
+
+    public void testChunkedText() throws Exception {
+        StringBuffer text = new StringBuffer();
+        for (int i = 0; i < 50; i++)
+            text.append("line \u00e9\u65e5\ud83d\ude00 &amp; &#x41;\r\n\r");
+        byte[] data = ("<r>" + text + "</r>").getBytes("UTF-8");
+        KXmlParser complete = new KXmlParser();
+        complete.setInput(new ByteArrayInputStream(data), "UTF-8");
+        complete.next();
+        complete.next();
+        String expected = complete.getText();
+
+        for (int token = 0; token < 2; token++) {
+            KXmlParser parser = new KXmlParser();
+            parser.setFeedInput("UTF-8");
+            parser.setProperty(CHUNK, new Integer(16));
+
+            String chunks = fedText(parser, data, token == 1);
+
+            // chunks end where the input ended, so there are many
+
+            StringBuffer joined = new StringBuffer();
+            int count = 0;
+            for (int i = 0; i < chunks.length(); i++) {
+                if (chunks.charAt(i) == '|')
+                    count++;
+                else
+                    joined.append(chunks.charAt(i));
+            }
+            assertTrue(chunks, count > data.length / 4);
+
+            // CR LF split between chunks is still a single line end
+
+            assertEquals(expected, joined.toString());
+        }
+    }
+
+    /** Without text-chunk-size, text is returned only when complete */
+
+    public void testUnchunkedText() throws Exception {
+        KXmlParser parser = new KXmlParser();
+        parser.setFeedInput("UTF-8");
+        byte[] data = "<r>some text".getBytes("UTF-8");
+        parser.feed(data, 0, data.length);
+        assertEquals(XmlPullParser.START_TAG, parser.next());
+        assertEquals(KXmlParser.NEED_INPUT, parser.next());
+
+        data = " more</r>".getBytes("UTF-8");
+        parser.feed(data, 0, data.length);
+        assertEquals(XmlPullParser.TEXT, parser.next());
+        assertEquals("some text more", parser.getText());
+    }
+
+    public void testTextLengthLimit() throws Exception {
+        byte[] data = "<r>0123456789abc</r>".getBytes("UTF-8");
+
+        KXmlParser parser = new KXmlParser();
+        parser.setFeedInput("UTF-8");
+        parser.setProperty(
+            "http://xmlpull.org/v1/doc/properties.html#max-text-length",
+            new Integer(10));
+        parser.feed(data, 0, 15);
+        assertEquals(XmlPullParser.START_TAG, parser.next());
+        try {
+            parser.next();
+            fail("text over the limit accepted");
+        }
+        catch (XmlPullParserException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("max-text-length"));
+        }
+
+        // with chunks, the limit applies to each chunk
+
+        parser = new KXmlParser();
+        parser.setFeedInput("UTF-8");
+        parser.setProperty(
+            "http://xmlpull.org/v1/doc/properties.html#max-text-length",
+            new Integer(10));
+        parser.setProperty(CHUNK, new Integer(10));
+        parser.feed(data, 0, data.length);
+        parser.endInput();
+        assertEquals(XmlPullParser.START_TAG, parser.next());
+        assertEquals(XmlPullParser.TEXT, parser.next());
+        assertEquals("0123456789", parser.getText());
+        assertEquals(XmlPullParser.TEXT, parser.next());
+        assertEquals("abc", parser.getText());
+        assertEquals(XmlPullParser.END_TAG, parser.next());
+    }
+
+    /** The skip methods reject open feed input and keep the state */
+
+    public void testSkipNeedsEndedInput() throws Exception {
+        KXmlParser parser = new KXmlParser();
+        parser.setFeedInput("UTF-8");
+        byte[] data = "<r><s>skipped<x/></s><t/>".getBytes("UTF-8");
+        parser.feed(data, 0, data.length);
+        parser.nextTag();
+        parser.nextTag();
+        assertEquals("s", parser.getName());
+
+        try {
+            parser.skipSubTree();
+            fail("skipSubTree on open feed");
+        }
+        catch (XmlPullParserException e) {
+        }
+        try {
+            parser.skipToStartTag(null, "t");
+            fail("skipToStartTag on open feed");
+        }
+        catch (XmlPullParserException e) {
+        }
+        assertEquals(XmlPullParser.START_TAG, parser.getEventType());
+        assertEquals("s", parser.getName());
+        assertEquals(2, parser.getDepth());
+
+        data = "</r>".getBytes("UTF-8");
+        parser.feed(data, 0, data.length);
+        parser.endInput();
+        parser.skipSubTree();
+        assertEquals(XmlPullParser.END_TAG, parser.getEventType());
+        assertEquals("s", parser.getName());
+        assertEquals(XmlPullParser.START_TAG, parser.skipToStartTag(null, "t"));
+    }
+}
@@ -0,0 +1,160 @@
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+
+import junit.framework.TestCase;
+
+import org.kxml2.io.KXmlParser;
+import org.xmlpull.v1.XmlPullParser;
+
+public class TestInput extends TestCase {
+
+    static final String DOC =
+        "<r a='\u00e4'>text &amp; \u20ac<b/>\ud83d\ude00<![CDATA[x]]></r>";
+
+    static String events(XmlPullParser parser) throws Exception {
+        StringBuffer buf = new StringBuffer();
+        while (true) {
+            int type = parser.nextToken();
+            buf.append(XmlPullParser.TYPES[type]);
+            buf.append(' ').append(parser.getName());
+            buf.append(' ').append(parser.getText());
+            if (type == XmlPullParser.START_TAG)
+                for (int i = 0; i < parser.getAttributeCount(); i++)
+                    buf.append(' ').append(parser.getAttributeValue(i));
+            buf.append('\n');
+            if (type == XmlPullParser.END_DOCUMENT)
+                return buf.toString();
+        }
+    }
+
+    static String expected(String doc) throws Exception {
+        KXmlParser parser = new KXmlParser();
+        parser.setInput(new StringReader(doc));
+        return events(parser);
+    }
+
+    static String expected(byte[] data, String enc) throws Exception {
+        KXmlParser parser = new KXmlParser();
+        parser.setInput(new ByteArrayInputStream(data), enc);
+        return events(parser) + parser.getInputEncoding();
+    }
+
+    static byte[] embed(byte[] data, int off) {
+        byte[] buf = new byte[off + data.length + 5];
+        for (int i = 0; i < buf.length; i++)
+            buf[i] = '<';
+        System.arraycopy(data, 0, buf, off, data.length);
+        return buf;
+    }
+
+    static void assertOutOfBounds(KXmlParser parser, int off, int len) {
+        try {
+            parser.setInput(new char[4], off, len);
+            fail("chars " + off + ", " + len);
+        }
+        catch (IndexOutOfBoundsException e) {
+        }
+        catch (Exception e) {
+            fail(e.toString());
+        }
+        try {
+            parser.setInput(new byte[4], off, len, "UTF-8");
+            fail("bytes " + off + ", " + len);
+        }
+        catch (IndexOutOfBoundsException e) {
+        }
+        catch (Exception e) {
+            fail(e.toString());
+        }
+    }
+
+    public void testBounds() throws Exception {
+        KXmlParser parser = new KXmlParser();
+        assertOutOfBounds(parser, -1, 2);
+        assertOutOfBounds(parser, 1, -1);
+        assertOutOfBounds(parser, 3, 2);
+        assertOutOfBounds(parser, 0, 5);
+    }
+
+    public void testEmptyRange() throws Exception {
+        KXmlParser parser = new KXmlParser();
+        parser.setInput("<r/>".toCharArray(), 2, 0);
+        assertEquals(XmlPullParser.END_DOCUMENT, parser.next());
+
+        byte[] data = "<r/>".getBytes("UTF-8");
+        parser.setInput(data, 4, 0, null);
+        assertEquals(XmlPullParser.END_DOCUMENT, parser.next());
+        parser.setInput(data, 1, 0, "UTF-8");
+        assertEquals(XmlPullParser.END_DOCUMENT, parser.next());
+    }
+
+    /** The chars around the range are markup that must not be read */
+
+    public void testCharRange() throws Exception {
+        char[] buf = ("<x>" + DOC + "<y>").toCharArray();
+        KXmlParser parser = new KXmlParser();
+        parser.setInput(buf, 3, DOC.length());
+        assertEquals(expected(DOC), events(parser));
+    }
+
+    public void testString() throws Exception {
+        KXmlParser parser = new KXmlParser();
+        parser.setInput(DOC);
+        assertEquals(expected(DOC), events(parser));
+
+        // the parser can be reused with other input
+
+        parser.setInput("<a>b</a>");
+        assertEquals(expected("<a>b</a>"), events(parser));
+    }
+
+    public void testByteRange() throws Exception {
+        byte[] data = DOC.getBytes("UTF-8");
+        String[] encodings = { null, "UTF-8" };
+
+        for (int e = 0; e < encodings.length; e++)
+            for (int off = 0; off < 6; off++) {
+                KXmlParser parser = new KXmlParser();
+                parser.setInput(embed(data, off), off, data.length, encodings[e]);
+                assertEquals(
+                    expected(data, encodings[e]),
+                    events(parser) + parser.getInputEncoding());
+            }
+    }
+
+    public void testByteOrderMark() throws Exception {
+        byte[] doc = DOC.getBytes("UTF-8");
+        byte[] data = new byte[doc.length + 3];
+        data[0] = (byte) 0xef;
+        data[1] = (byte) 0xbb;
+        data[2] = (byte) 0xbf;
+        System.arraycopy(doc, 0, data, 3, doc.length);
+
+        KXmlParser parser = new KXmlParser();
+        parser.setInput(embed(data, 7), 7, data.length, null);
+        assertEquals(expected(data, null), events(parser) + parser.getInputEncoding());
+        assertEquals(data.length, parser.getEventEndByteOffset());
+    }
+
+    public void testEncodingDeclaration() throws Exception {
+        String doc = "<?xml version='1.0' encoding='ISO-8859-1'?>" + "<r a='\u00e4'>\u00fc\u00df</r>";
+        byte[] data = doc.getBytes("ISO-8859-1");
+
+        KXmlParser parser = new KXmlParser();
+        parser.setInput(embed(data, 3), 3, data.length, null);
+        String events = events(parser) + parser.getInputEncoding();
+        assertEquals(expected(data, null), events);
+        assertTrue(events, events.indexOf("\u00fc\u00df") != -1);
+        assertEquals(data.length, parser.getEventEndByteOffset());
+    }
+
+    /** UTF-16 is decoded by a reader over the range */
+
+    public void testUtf16() throws Exception {
+        byte[] data = ("\ufeff" + DOC).getBytes("UTF-16BE");
+
+        KXmlParser parser = new KXmlParser();
+        parser.setInput(embed(data, 5), 5, data.length, null);
+        assertEquals(expected(data, null), events(parser) + parser.getInputEncoding());
+    }
+}
@@ -0,0 +1,145 @@
+import java.io.StringReader;
+
+import junit.framework.TestCase;
+
+import org.kxml2.io.KXmlParser;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+/** 
+ * Checks each limit at its boundary: input at the limit is accepted,
+ * one more is rejected, also in relaxed mode. */
+
+public class TestLimits extends TestCase {
+
+    static final String PROPERTY = "http://xmlpull.org/v1/doc/properties.html#";
+
+    static String repeat(String s, int count) {
+        StringBuffer buf = new StringBuffer();
+        for (int i = 0; i < count; i++)
+            buf.append(s);
+        return buf.toString();
+    }
+
+    /** Parses the document, returns null or the exception message */
+
+    static String parse(String doc, String limit, int max, boolean relaxed)
+        throws Exception {
+        KXmlParser parser = new KXmlParser();
+        parser.setFeature("http://xmlpull.org/v1/doc/features.html#relaxed", relaxed);
+        parser.setProperty(PROPERTY + "buffer-size", new Integer(128));
+        parser.setInput(new StringReader(doc));
+        parser.setProperty(PROPERTY + limit, new Integer(max));
+        parser.defineEntityReplacementText("e", "abc");
+        try {
+            while (parser.next() != XmlPullParser.END_DOCUMENT) {
+            }
+            return null;
+        }
+        catch (XmlPullParserException e) {
+            return e.getMessage();
+        }
+    }
+
+    /** 
+     * Checks that the first document is accepted and the second one is
+     * rejected with the given limit, in strict and relaxed mode */
+
+    static void check(String limit, int max, String atLimit, String over)
+        throws Exception {
+        assertNull(atLimit, parse(atLimit, limit, max, false));
+        assertNull(atLimit, parse(atLimit, limit, max, true));
+
+        for (int relaxed = 0; relaxed < 2; relaxed++) {
+            String message = parse(over, limit, max, relaxed == 1);
+            assertNotNull(over, message);
+            assertTrue(message, message.startsWith(limit + " exceeded: " + max));
+        }
+    }
+
+    public void testDepth() throws Exception {
+        for (int max = 1; max < 5; max++)
+            check(
+                "max-depth",
+                max,
+                repeat("<a>", max) + repeat("</a>", max),
+                repeat("<a>", max + 1) + repeat("</a>", max + 1));
+        check("max-depth", 2, "<a><b/><b/></a>", "<a><b><c/></b></a>");
+    }
+
+    public void testAttributes() throws Exception {
+        for (int max = 1; max < 5; max++) {
+            StringBuffer buf = new StringBuffer();
+            for (int i = 0; i < max; i++)
+                buf.append(" a" + i + "='v'");
+            check(
+                "max-attributes",
+                max,
+                "<r" + buf + "/>",
+                "<r" + buf + " b='v'/>");
+        }
+    }
+
+    public void testNameLength() throws Exception {
+
+        // the names fit into the 128 char buffer or cross its end
+
+        int[] lengths = { 1, 5, 100, 300 };
+        for (int i = 0; i < lengths.length; i++) {
+            int max = lengths[i];
+            String name = repeat("n", max);
+            check("max-name-length", max, "<" + name + "/>", "<" + name + "x/>");
+            check(
+                "max-name-length",
+                max,
+                "<r " + name + "='v'/>",
+                "<r " + name + "x='v'/>");
+            check(
+                "max-name-length",
+                max,
+                "<r>" + repeat(" ", 126) + "<" + name + "/></r>",
+                "<r>" + repeat(" ", 126) + "<" + name + "x/></r>");
+        }
+    }
+
+    public void testTextLength() throws Exception {
+        int[] lengths = { 1, 10, 200 };
+        for (int i = 0; i < lengths.length; i++) {
+            int max = lengths[i];
+            String text = repeat("t", max);
+            check("max-text-length", max, "<r>" + text + "</r>", "<r>" + text + "t</r>");
+            check(
+                "max-text-length",
+                max,
+                "<r a='" + text + "'/>",
+                "<r a='" + text + "t'/>");
+            if (max >= 3)
+                check(
+                    "max-text-length",
+                    max,
+                    "<r>" + text.substring(3) + "&e;</r>",
+                    "<r>" + text.substring(2) + "&e;</r>");
+        }
+    }
+
+    public void testEntityExpansion() throws Exception {
+
+        // references count one char each, replacement text its length
+
+        check("max-entity-expansion", 3, "<r>&amp;&lt;&#65;</r>", "<r>&amp;&lt;&#65;&gt;</r>");
+        check("max-entity-expansion", 3, "<r a='&amp;&lt;'>&#x41;</r>", "<r a='&amp;&lt;'>&#x41;&#x41;</r>");
+        check("max-entity-expansion", 6, "<r>&e;&e;</r>", "<r>&e;&e;&amp;</r>");
+        check("max-entity-expansion", 6, "<r>&e;</r><!--x-->", "<r>&e;&amp;&e;</r>");
+    }
+
+    public void testTotalChars() throws Exception {
+        int[] lengths = { 10, 127, 128, 129, 500 };
+        for (int i = 0; i < lengths.length; i++) {
+            int max = lengths[i];
+            String doc = "<r>" + repeat("t", max - 7) + "</r>";
+            assertEquals(max, doc.length());
+            check("max-total-chars", max, doc, doc + " ");
+            check("max-total-chars", max, doc, "<r>" + repeat("t", max - 6) + "</r>");
+        }
+    }
+}
@@ -0,0 +1,237 @@
+import java.io.StringReader;
+
+import junit.framework.TestCase;
+
+import org.kxml2.io.KXmlParser;
+import org.kxml2.io.SymbolTable;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+/** Checks the char classes of names and entity names */
+
+public class TestNames extends TestCase {
+
+    static KXmlParser parser(String doc, boolean relaxed, boolean nsp)
+        throws Exception {
+
+        KXmlParser parser = new KXmlParser();
+        parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, nsp);
+        parser.setFeature("http://xmlpull.org/v1/doc/features.html#relaxed", relaxed);
+        parser.setProperty(
+            "http://xmlpull.org/v1/doc/properties.html#buffer-size",
+            new Integer(128));
+        parser.setInput(new StringReader(doc));
+        return parser;
+    }
+
+    static String spaces(int count) {
+        StringBuffer buf = new StringBuffer();
+        for (int i = 0; i < count; i++)
+            buf.append(' ');
+        return buf.toString();
+    }
+
+    /** Returns the element name and attribute names of the first tag */
+
+    static String names(String tag, boolean relaxed) throws Exception {
+        KXmlParser parser = parser(tag, relaxed, false);
+        parser.nextTag();
+        StringBuffer buf = new StringBuffer(parser.getName());
+        for (int i = 0; i < parser.getAttributeCount(); i++)
+            buf.append(' ').append(parser.getAttributeName(i));
+        return buf.toString();
+    }
+
+    static void assertRejected(String doc, boolean nsp) throws Exception {
+        try {
+            KXmlParser parser = parser(doc, false, nsp);
+            while (parser.next() != XmlPullParser.END_DOCUMENT) {
+            }
+            fail("accepted: " + doc);
+        }
+        catch (XmlPullParserException e) {
+        }
+    }
+
+    /** 
+     * Names above the table range: from U+00B7 chars are name chars,
+     * from U+00C0 they may also start a name. The names are checked
+     * inside the buffer and across a buffer refill. */
+
+    public void testNonAsciiNames() throws Exception {
+        String[] names = {
+            "\u00e9t\u00e9",
+            "a\u00b7b",
+            "\u00c0",
+            "\u0100\u00b7\u00b8",
+            "\u65e5\u672c\u8a9e",
+            "x\u3000y",
+            "_\ud83d\ude00" };
+
+        for (int i = 0; i < names.length; i++) {
+            String name = names[i];
+            for (int pad = 0; pad < 130; pad += 5) {
+                String tag = spaces(pad) + "<" + name + " " + name + "='1'/>";
+                assertEquals(tag, name + " " + name, names(tag, false));
+            }
+        }
+    }
+
+    public void testNonAsciiNameBoundaries() throws Exception {
+
+        // U+00B7 to U+00BF may not start a name
+
+        assertRejected("<\u00b7a/>", false);
+        assertRejected("<r \u00bfa='1'/>", false);
+        assertEquals("\u00b7a", names("<\u00b7a/>", true));
+
+        // below U+00B7, non-ASCII chars end a name
+
+        assertRejected("<a\u00a0b/>", false);
+        assertRejected("<a\u0080/>", false);
+        assertRejected("<r a\u00b6='1'/>", false);
+    }
+
+    public void testNonAsciiEntityNames() throws Exception {
+        KXmlParser parser = parser("<r>&\u00e9t\u00e9;&\u65e5;</r>", false, false);
+        parser.defineEntityReplacementText("\u00e9t\u00e9", "summer");
+        parser.defineEntityReplacementText("\u65e5", "day");
+        parser.next();
+        assertEquals(XmlPullParser.TEXT, parser.next());
+        assertEquals("summerday", parser.getText());
+
+        assertRejected("<r>&\u00e9t\u00e9;</r>", false);
+    }
+
+    /** Without namespace processing, colons are part of the name */
+
+    public void testColonsWithoutNamespaces() throws Exception {
+        assertEquals(":a b:", names("<:a b:='1'/>", false));
+        assertEquals("a: :", names("<a: :='1'/>", false));
+        assertEquals("a:b:c", names("<a:b:c/>", false));
+    }
+
+    public void testColonAtStart() throws Exception {
+        assertRejected("<:a/>", true);
+
+        // like undefined attribute prefixes, a runtime exception
+
+        try {
+            parser("<r xmlns:p='u' :a='1' p:b='2'/>", false, true).nextTag();
+            fail("empty attribute prefix accepted");
+        }
+        catch (RuntimeException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("illegal attribute name: :a"));
+        }
+
+        KXmlParser parser = parser("<:a/>", true, true);
+        parser.nextTag();
+        assertEquals("a", parser.getName());
+        assertEquals("", parser.getPrefix());
+    }
+
+    public void testColonAtEnd() throws Exception {
+        assertRejected("<p:/>", true);
+
+        KXmlParser parser = parser("<p: xmlns:p='u' p:='1'/>", false, true);
+        parser.nextTag();
+        assertEquals("", parser.getName());
+        assertEquals("p", parser.getPrefix());
+        assertEquals("u", parser.getNamespace());
+        assertEquals("", parser.getAttributeName(0));
+        assertEquals("u", parser.getAttributeNamespace(0));
+    }
+
+    /** The first colon separates prefix and local name */
+
+    public void testSeveralColons() throws Exception {
+        KXmlParser parser = parser("<p:a:b xmlns:p='u' p:c:d='1'/>", false, true);
+        parser.nextTag();
+        assertEquals("a:b", parser.getName());
+        assertEquals("u", parser.getNamespace());
+        assertEquals("c:d", parser.getAttributeName(0));
+    }
+
+    static String resolve(KXmlParser parser, String doc) throws Exception {
+        parser.setInput(new StringReader(doc));
+        StringBuffer buf = new StringBuffer();
+        while (parser.next() != XmlPullParser.END_DOCUMENT) {
+            if (parser.getEventType() != XmlPullParser.START_TAG)
+                continue;
+            buf.append(parser.getPrefix()).append('|');
+            buf.append(parser.getNamespace()).append('|');
+            buf.append(parser.getName());
+            for (int i = 0; i < parser.getAttributeCount(); i++) {
+                buf.append(' ').append(parser.getAttributeNamespace(i));
+                buf.append('|').append(parser.getAttributeName(i));
+            }
+            buf.append(';');
+        }
+        return buf.toString();
+    }
+
+    /** 
+     * The cached split of a name is reused with the prefix bound to a
+     * different namespace in the next document, by the same parser and
+     * by parsers sharing the symbol table. */
+
+    public void testSplitAcrossDocuments() throws Exception {
+        String doc1 = "<p:r xmlns:p='u1'><p:e p:a='1'/></p:r>";
+        String doc2 = "<p:r xmlns:p='u2'><p:e p:a='1'/><q:e xmlns:q='u1'/></p:r>";
+        String doc3 = "<p:r xmlns:p='u3' xmlns='d'><p:e xmlns:p='u4' p:a='1'/></p:r>";
+
+        String expected1 = "p|u1|r;p|u1|e u1|a;";
+        String expected2 = "p|u2|r;p|u2|e u2|a;q|u1|e;";
+        String expected3 = "p|u3|r;p|u4|e u4|a;";
+
+        KXmlParser parser = new KXmlParser();
+        parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+        for (int i = 0; i < 2; i++) {
+            assertEquals(expected1, resolve(parser, doc1));
+            assertEquals(expected2, resolve(parser, doc2));
+            assertEquals(expected3, resolve(parser, doc3));
+        }
+
+        SymbolTable symbols = new SymbolTable();
+        KXmlParser[] parsers = new KXmlParser[2];
+        for (int i = 0; i < parsers.length; i++) {
+            parsers[i] = new KXmlParser();
+            parsers[i].setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+            parsers[i].setProperty(
+                "http://xmlpull.org/v1/doc/properties.html#symbol-table",
+                symbols);
+        }
+        assertEquals(expected1, resolve(parsers[0], doc1));
+        assertEquals(expected2, resolve(parsers[1], doc2));
+        assertEquals(expected3, resolve(parsers[0], doc3));
+        assertEquals(expected1, resolve(parsers[1], doc1));
+    }
+
+    /** Names are split correctly once the table is full */
+
+    public void testFullTable() throws Exception {
+        SymbolTable symbols = new SymbolTable();
+        KXmlParser parser = new KXmlParser();
+        parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+        parser.setProperty(
+            "http://xmlpull.org/v1/doc/properties.html#symbol-table",
+            symbols);
+
+        StringBuffer doc = new StringBuffer("<r xmlns:p='u'>");
+        for (int i = 0; i < 10000; i++)
+            doc.append("<p:e" + i + " p:a" + i + "='1'/>");
+        doc.append("</r>");
+
+        parser.setInput(new StringReader(doc.toString()));
+        parser.nextTag();
+        for (int i = 0; i < 10000; i++) {
+            parser.nextTag();
+            assertEquals("e" + i, parser.getName());
+            assertEquals("u", parser.getNamespace());
+            assertEquals("a" + i, parser.getAttributeName(0));
+            assertEquals("u", parser.getAttributeNamespace(0));
+            parser.nextTag();
+        }
+        assertTrue(symbols.size() <= 8192);
+    }
+}
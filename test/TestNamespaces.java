@@ -0,0 +1,156 @@
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import junit.framework.TestCase;
+
+import org.kxml2.io.KXmlParser;
+import org.kxml2.io.KXmlSerializer;
+import org.xmlpull.v1.XmlPullParser;
+
+/** Checks the hashed prefix lookup against a scan of the stack */
+
+public class TestNamespaces extends TestCase {
+
+    static final String[] PREFIXES = {
+        null, "", "a", "b", "c", "p0", "p1", "p17", "xml", "xmlns", "zz" };
+
+    /** Looks the prefix up by scanning the declarations in scope */
+
+    static String scan(XmlPullParser parser, String prefix) throws Exception {
+        if ("xml".equals(prefix))
+            return "http://www.w3.org/XML/1998/namespace";
+        if ("xmlns".equals(prefix))
+            return "http://www.w3.org/2000/xmlns/";
+
+        for (int i = parser.getNamespaceCount(parser.getDepth()) - 1; i >= 0; i--) {
+            String p = parser.getNamespacePrefix(i);
+            if (prefix == null ? p == null : prefix.equals(p))
+                return parser.getNamespaceUri(i);
+        }
+        return null;
+    }
+
+    static void checkAll(String doc) throws Exception {
+        KXmlParser parser = new KXmlParser();
+        parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+        parser.setInput(new StringReader(doc));
+
+        int events = 0;
+        do {
+            for (int i = 0; i < PREFIXES.length; i++)
+                assertEquals(
+                    events + " " + PREFIXES[i],
+                    scan(parser, PREFIXES[i]),
+                    parser.getNamespace(PREFIXES[i]));
+            events++;
+        }
+        while (parser.next() != XmlPullParser.END_DOCUMENT);
+    }
+
+    public void testDefaultNamespace() throws Exception {
+        KXmlParser parser = new KXmlParser();
+        parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+        parser.setInput(new StringReader(
+            "<r xmlns='urn:d'><s xmlns=''><t xmlns='urn:e'/></s></r>"));
+
+        parser.nextTag();
+        assertEquals("urn:d", parser.getNamespace(null));
+        assertNull(parser.getNamespace(""));
+        parser.nextTag();
+        assertEquals("", parser.getNamespace(null));
+        assertNull(parser.getNamespace(""));
+        parser.nextTag();
+        assertEquals("urn:e", parser.getNamespace(null));
+        assertNull(parser.getNamespace(""));
+        parser.nextTag();
+        parser.nextTag();
+        assertEquals("", parser.getNamespace(null));
+        parser.nextTag();
+        assertEquals("urn:d", parser.getNamespace(null));
+        parser.next();
+        assertNull(parser.getNamespace(null));
+    }
+
+    public void testShadowing() throws Exception {
+        checkAll(
+            "<r xmlns='d0' xmlns:a='a0'>"
+                + "<s xmlns:a='a1' xmlns:b='b1'><t xmlns='' xmlns:a='a2'/>"
+                + "<t xmlns:b='b2'><u xmlns='d3'/></t></s>"
+                + "<s xmlns:c='c1'/><s/></r>");
+    }
+
+    /** Many prefixes, so that the index grows and removes keys */
+
+    public void testManyPrefixes() throws Exception {
+        StringBuffer doc = new StringBuffer();
+        for (int depth = 0; depth < 20; depth++) {
+            doc.append("<e");
+            if (depth % 3 == 0)
+                doc.append(" xmlns='d" + depth + "'");
+            for (int p = 0; p < 20; p += depth % 4 + 1)
+                doc.append(" xmlns:p" + p + "='u" + depth + "-" + p + "'");
+            doc.append('>');
+            if (depth % 5 == 4)
+                doc.append("<x xmlns:p17='x' xmlns:zz='z'/>");
+        }
+        for (int depth = 0; depth < 20; depth++)
+            doc.append("</e><f xmlns:a='f" + depth + "'/>");
+
+        checkAll("<r>" + doc + "</r>");
+    }
+
+    /** The index is rebuilt for each document */
+
+    public void testReuse() throws Exception {
+        KXmlParser parser = new KXmlParser();
+        parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+        parser.setInput(new StringReader("<r xmlns='d' xmlns:a='a'><s/>"));
+        parser.nextTag();
+        parser.nextTag();
+        assertEquals("a", parser.getNamespace("a"));
+
+        parser.setInput(new StringReader("<r xmlns:b='b'/>"));
+        assertNull(parser.getNamespace("a"));
+        assertNull(parser.getNamespace(null));
+        parser.nextTag();
+        assertNull(parser.getNamespace("a"));
+        assertNull(parser.getNamespace(null));
+        assertEquals("b", parser.getNamespace("b"));
+    }
+
+    public void testSerializerPrefixes() throws Exception {
+        KXmlSerializer serializer = new KXmlSerializer();
+        serializer.setOutput(new StringWriter());
+        serializer.startDocument(null, null);
+
+        serializer.setPrefix("", "urn:d");
+        serializer.setPrefix("a", "urn:a");
+        serializer.startTag("urn:d", "r");
+
+        // the default namespace has no prefix to return
+
+        assertNull(serializer.getPrefix("urn:d", false));
+        assertEquals("a", serializer.getPrefix("urn:a", false));
+        assertNull(serializer.getPrefix("urn:x", false));
+
+        // a shadowed prefix no longer stands for its namespace
+
+        serializer.setPrefix("a", "urn:b");
+        serializer.setPrefix("", "");
+        serializer.startTag("", "s");
+        assertNull(serializer.getPrefix("urn:a", false));
+        assertEquals("a", serializer.getPrefix("urn:b", false));
+        assertNull(serializer.getPrefix("urn:d", false));
+
+        String generated = serializer.getPrefix("urn:x", true);
+        assertTrue(generated, generated.startsWith("n"));
+        assertEquals(generated, serializer.getPrefix("urn:x", false));
+
+        serializer.endTag("", "s");
+        assertEquals("a", serializer.getPrefix("urn:a", false));
+        assertNull(serializer.getPrefix("urn:b", false));
+        assertNull(serializer.getPrefix("urn:x", false));
+        serializer.endTag("urn:d", "r");
+        serializer.endDocument();
+    }
+}
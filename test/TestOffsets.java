@@ -0,0 +1,183 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+
+import junit.framework.TestCase;
+
+import org.kxml2.io.KXmlParser;
+import org.xmlpull.v1.XmlPullParser;
+
+public class TestOffsets extends TestCase {
+
+    static final String PART =
+        "<b>\u65e5\u672c</b>\r\n<!-- \u20ac --><c d=\"\ud83d\ude00\"/>&amp;\ud83d\ude00x<![CDATA[\u00df]]><?pi \u00e9?>";
+
+    static final String DOC;
+
+    static {
+        // long enough for several buffer refills
+
+        StringBuffer buf = new StringBuffer();
+        buf.append("<?xml version='1.0' encoding='UTF-8'?>\n<r a='\u00e9'>\u00e4\u00f6\u00fc ");
+        for (int i = 0; i < 40; i++)
+            buf.append(PART);
+        DOC = buf.append("</r>").toString();
+    }
+
+    static final String BUFFER_SIZE =
+        "http://xmlpull.org/v1/doc/properties.html#buffer-size";
+
+    /** 
+     * Checks that the offsets of every event delimit its source in DOC,
+     * in chars and in UTF-8 bytes */
+
+    static void check(KXmlParser parser, boolean tokens) throws Exception {
+        byte[] data = DOC.getBytes("UTF-8");
+        long end = 0;
+        boolean empty = false;
+        int fed = 0;
+
+        while (true) {
+            int type = tokens ? parser.nextToken() : parser.next();
+
+            // feed input is passed in chunks of seven bytes
+
+            if (type == KXmlParser.NEED_INPUT) {
+                if (fed == data.length)
+                    parser.endInput();
+                else {
+                    int len = Math.min(7, data.length - fed);
+                    parser.feed(data, fed, len);
+                    fed += len;
+                }
+                continue;
+            }
+
+            long start = parser.getEventStartOffset();
+
+            assertTrue(start >= end);
+            end = parser.getEventEndOffset();
+
+            String chars = DOC.substring((int) start, (int) end);
+            long byteStart = parser.getEventStartByteOffset();
+            long byteEnd = parser.getEventEndByteOffset();
+            String bytes = new String(
+                data,
+                (int) byteStart,
+                (int) (byteEnd - byteStart),
+                "UTF-8");
+
+            assertEquals(chars, bytes);
+
+            if (type == XmlPullParser.START_TAG) {
+                assertTrue(chars, chars.startsWith("<" + parser.getName()));
+                empty = parser.isEmptyElementTag();
+            }
+            else if (type == XmlPullParser.END_TAG) {
+                assertEquals(
+                    empty ? "" : "</" + parser.getName() + ">",
+                    chars);
+                empty = false;
+            }
+            else if (type == XmlPullParser.END_DOCUMENT) {
+                assertEquals(DOC.length(), end);
+                assertEquals(data.length, byteEnd);
+                return;
+            }
+        }
+    }
+
+    public void testStream() throws Exception {
+        int[] sizes = { 128, 129, 131, 8192 };
+
+        for (int i = 0; i < sizes.length; i++)
+            for (int tokens = 0; tokens < 2; tokens++) {
+                KXmlParser parser = new KXmlParser();
+                parser.setProperty(BUFFER_SIZE, new Integer(sizes[i]));
+                parser.setInput(
+                    new ByteArrayInputStream(DOC.getBytes("UTF-8")),
+                    null);
+                check(parser, tokens == 1);
+            }
+    }
+
+    public void testFeed() throws Exception {
+        for (int tokens = 0; tokens < 2; tokens++) {
+            KXmlParser parser = new KXmlParser();
+            parser.setFeedInput("UTF-8");
+            check(parser, tokens == 1);
+        }
+    }
+
+    public void testByteArray() throws Exception {
+        byte[] data = DOC.getBytes("UTF-8");
+        byte[] buf = new byte[data.length + 10];
+        System.arraycopy(data, 0, buf, 3, data.length);
+
+        KXmlParser parser = new KXmlParser();
+        parser.setInput(buf, 3, data.length, "UTF-8");
+        check(parser, false);
+    }
+
+    public void testCharInput() throws Exception {
+        KXmlParser parser = new KXmlParser();
+        char[] buf = ("xx" + DOC).toCharArray();
+        parser.setInput(buf, 2, buf.length - 2);
+        parser.next();
+        assertEquals(DOC.indexOf("<r"), parser.getEventStartOffset());
+        assertEquals(DOC.indexOf("\u00e4"), parser.getEventEndOffset());
+        assertEquals(-1, parser.getEventStartByteOffset());
+    }
+
+    /** 
+     * Offsets are longs: a checkpoint moved past 2^31 chars and bytes
+     * keeps counting from there */
+
+    public void testLargeOffsets() throws Exception {
+        byte[] data = DOC.getBytes("UTF-8");
+        int cut = DOC.indexOf("<b>");
+        int byteCut = DOC.substring(0, cut).getBytes("UTF-8").length;
+
+        KXmlParser parser = new KXmlParser();
+        parser.setInput(new ByteArrayInputStream(data), "UTF-8");
+        while (parser.getEventEndOffset() != cut)
+            parser.next();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        parser.writeCheckpoint(out);
+
+        // shifts the checkpoint offsets by 3 * 2^31, and the input
+        // accordingly, as if it was preceded by that many ASCII chars
+
+        long shift = 3L << 31;
+        DataInputStream dis =
+            new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+        ByteArrayOutputStream moved = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(moved);
+        dos.writeInt(dis.readInt());
+        dos.writeUTF(dis.readUTF());
+        assertEquals(byteCut, dis.readLong());
+        dos.writeLong(0);
+        assertEquals(cut, dis.readLong());
+        dos.writeLong(shift + cut);
+        while (dis.available() > 0)
+            dos.write(dis.read());
+
+        parser = new KXmlParser();
+        parser.resume(
+            new ByteArrayInputStream(moved.toByteArray()),
+            new ByteArrayInputStream(data, byteCut, data.length - byteCut));
+
+        assertEquals(XmlPullParser.START_TAG, parser.next());
+        assertEquals("b", parser.getName());
+        assertEquals(shift + cut, parser.getEventStartOffset());
+        assertEquals(shift + cut + 3, parser.getEventEndOffset());
+        assertEquals(0, parser.getEventStartByteOffset());
+        assertEquals(3, parser.getEventEndByteOffset());
+
+        while (parser.next() != XmlPullParser.END_DOCUMENT)
+            assertTrue(parser.getEventStartOffset() > shift);
+        assertEquals(shift + DOC.length(), parser.getEventEndOffset());
+    }
+}
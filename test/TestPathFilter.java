@@ -0,0 +1,159 @@
+import java.io.IOException;
+import java.io.StringReader;
+
+import junit.framework.TestCase;
+
+import org.kxml2.io.KXmlParser;
+import org.kxml2.io.PathFilter;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+public class TestPathFilter extends TestCase {
+
+    static final String DOC =
+        "<feed><title>t</title>"
+            + "<entry id='1'><title>a</title><x><title>deep</title></x></entry>"
+            + "<skip><entry id='9'><title>no</title></entry></skip>"
+            + "<entry><title>b</title></entry>"
+            + "</feed>";
+
+    static class Collect implements PathFilter.Handler {
+
+        StringBuffer buf = new StringBuffer();
+        boolean readText;
+
+        public void match(String path, KXmlParser parser, String value)
+            throws IOException, XmlPullParserException {
+
+            buf.append(path).append(' ').append(parser.getDepth());
+            if (value != null)
+                buf.append(" value=").append(value);
+            if (readText)
+                buf.append(" text=").append(parser.nextText());
+            buf.append(';');
+        }
+    }
+
+    static String run(String path, boolean readText) throws Exception {
+        Collect handler = new Collect();
+        handler.readText = readText;
+        PathFilter filter = new PathFilter();
+        filter.subscribe(path, handler);
+
+        KXmlParser parser = new KXmlParser();
+        parser.setInput(new StringReader(DOC));
+        filter.parse(parser);
+        assertEquals(XmlPullParser.END_DOCUMENT, parser.getEventType());
+        return handler.buf.toString();
+    }
+
+    public void testChildPath() throws Exception {
+        assertEquals(
+            "/feed/entry/title 3 text=a;/feed/entry/title 3 text=b;",
+            run("/feed/entry/title", true));
+    }
+
+    public void testWildcard() throws Exception {
+        assertEquals(
+            "/feed/*/title 3;/feed/*/title 3;",
+            run("/feed/*/title", false));
+    }
+
+    public void testDescendant() throws Exception {
+        assertEquals(
+            "//title 2;//title 3;//title 4;//title 4;//title 3;",
+            run("//title", false));
+    }
+
+    public void testAttribute() throws Exception {
+        assertEquals(
+            "//entry/@id 2 value=1;//entry/@id 3 value=9;",
+            run("//entry/@id", false));
+    }
+
+    public void testIllegalPath() {
+        PathFilter filter = new PathFilter();
+        try {
+            filter.subscribe("feed/entry", new Collect());
+            fail("relative path accepted");
+        }
+        catch (IllegalArgumentException e) {
+        }
+    }
+
+    public void testFeedInputRejected() throws Exception {
+        PathFilter filter = new PathFilter();
+        filter.subscribe("//entry", new Collect());
+
+        KXmlParser parser = new KXmlParser();
+        parser.setFeedInput("UTF-8");
+        byte[] data = DOC.getBytes("UTF-8");
+        parser.feed(data, 0, data.length);
+        try {
+            filter.parse(parser);
+            fail("feed input accepted");
+        }
+        catch (XmlPullParserException e) {
+        }
+
+        // once the input is ended, the document is complete
+
+        parser.endInput();
+        filter.parse(parser);
+        assertEquals(XmlPullParser.END_DOCUMENT, parser.getEventType());
+    }
+
+    static final String ITEMS = "<a><b id='1'>x</b><b>y</b><b id='3'/></a>";
+
+    static String runAll(String[] paths, Collect[] handlers) throws Exception {
+        PathFilter filter = new PathFilter();
+        StringBuffer buf = new StringBuffer();
+        for (int i = 0; i < paths.length; i++) {
+            handlers[i].buf = buf;
+            filter.subscribe(paths[i], handlers[i]);
+        }
+
+        KXmlParser parser = new KXmlParser();
+        parser.setInput(new StringReader(ITEMS));
+        filter.parse(parser);
+        return buf.toString();
+    }
+
+    /** Attribute handlers run first, before the content can be read */
+
+    public void testElementAndAttribute() throws Exception {
+        Collect text = new Collect();
+        text.readText = true;
+
+        assertEquals(
+            "/a/b/@id 2 value=1;/a/b 2 text=x;/a/b 2 text=y;"
+                + "/a/b/@id 2 value=3;/a/b 2 text=;",
+            runAll(
+                new String[] { "/a/b", "/a/b/@id" },
+                new Collect[] { text, new Collect() }));
+    }
+
+    public void testSeveralElementPaths() throws Exception {
+        Collect text = new Collect();
+        text.readText = true;
+
+        // the handler reading the content is called last
+
+        assertEquals(
+            "//b 2;/a/b 2 text=x;//b 2;/a/b 2 text=y;//b 2;/a/b 2 text=;",
+            runAll(
+                new String[] { "//b", "/a/b" },
+                new Collect[] { new Collect(), text }));
+
+        text = new Collect();
+        text.readText = true;
+        try {
+            runAll(
+                new String[] { "/a/b", "//b" },
+                new Collect[] { text, new Collect() });
+            fail("content read before all handlers were called");
+        }
+        catch (XmlPullParserException e) {
+        }
+    }
+}
@@ -0,0 +1,198 @@
+import java.io.StringReader;
+import java.util.Hashtable;
+
+import junit.framework.TestCase;
+
+import org.kxml2.io.KXmlParser;
+import org.kxml2.io.KXmlParserPool;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+public class TestPool extends TestCase {
+
+    static final String PROPERTY = "http://xmlpull.org/v1/doc/properties.html#";
+    static final String FEATURE = "http://xmlpull.org/v1/doc/features.html#";
+
+    public void testConfiguration() throws Exception {
+        KXmlParserPool pool = new KXmlParserPool(4, 1 << 20);
+        pool.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+        pool.setFeature(FEATURE + "relaxed", true);
+        pool.setProperty(PROPERTY + "buffer-size", new Integer(256));
+        pool.setProperty(PROPERTY + "max-depth", new Integer(3));
+
+        KXmlParser parser = pool.acquire();
+        assertTrue(parser.getFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES));
+        assertTrue(parser.getFeature(FEATURE + "relaxed"));
+        assertEquals(new Integer(256), parser.getProperty(PROPERTY + "buffer-size"));
+        assertEquals(new Integer(3), parser.getProperty(PROPERTY + "max-depth"));
+        pool.release(parser);
+
+        assertSame(parser, pool.acquire());
+        assertTrue(parser.getFeature(FEATURE + "relaxed"));
+        assertEquals(new Integer(3), parser.getProperty(PROPERTY + "max-depth"));
+        pool.release(parser);
+
+        // null restores the default
+
+        pool.setProperty(PROPERTY + "max-depth", null);
+        assertNull(pool.acquire().getProperty(PROPERTY + "max-depth"));
+    }
+
+    public void testValidation() throws Exception {
+        KXmlParserPool pool = new KXmlParserPool(4, 1 << 20);
+        String[] features = { FEATURE + "unknown", "relaxed", PROPERTY + "relaxed" };
+        for (int i = 0; i < features.length; i++) {
+            try {
+                pool.setFeature(features[i], true);
+                fail(features[i]);
+            }
+            catch (XmlPullParserException e) {
+            }
+        }
+
+        Object[] properties = {
+            PROPERTY + "unknown", new Integer(1),
+            PROPERTY + "location", "x",
+            PROPERTY + "xmldecl-version", "1.0",
+            PROPERTY + "buffer-size", new Integer(127),
+            PROPERTY + "buffer-size", null,
+            PROPERTY + "max-depth", new Integer(0),
+            PROPERTY + "max-depth", "1",
+            PROPERTY + "text-chunk-size", new Integer(-1),
+            PROPERTY + "symbol-table", new Integer(1) };
+        for (int i = 0; i < properties.length; i += 2) {
+            try {
+                pool.setProperty((String) properties[i], properties[i + 1]);
+                fail(properties[i] + " " + properties[i + 1]);
+            }
+            catch (XmlPullParserException e) {
+            }
+        }
+
+        // rejected settings leave the configuration unchanged
+
+        KXmlParser parser = pool.acquire();
+        assertFalse(new Integer(127).equals(parser.getProperty(PROPERTY + "buffer-size")));
+        assertNull(parser.getProperty(PROPERTY + "max-depth"));
+        assertFalse(parser.getFeature(FEATURE + "relaxed"));
+    }
+
+    public void testReleasedParserIsClean() throws Exception {
+        KXmlParserPool pool = new KXmlParserPool(4, 1 << 20);
+        pool.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+
+        KXmlParser parser = pool.acquire();
+        parser.setInput(new StringReader("<a xmlns='u'>\n<b x='1'>&e;"));
+        parser.setProperty(PROPERTY + "location", "doc1");
+        parser.defineEntityReplacementText("e", "E");
+        parser.next();
+        parser.next();
+        parser.next();
+        assertEquals("b", parser.getName());
+        assertEquals(2, parser.getDepth());
+        pool.release(parser);
+
+        assertSame(parser, pool.acquire());
+        assertEquals(XmlPullParser.START_DOCUMENT, parser.getEventType());
+        assertEquals(0, parser.getDepth());
+        assertEquals(-1, parser.getAttributeCount());
+        assertNull(parser.getName());
+        assertNull(parser.getNamespace(null));
+        assertNull(parser.getProperty(PROPERTY + "location"));
+        assertEquals(1, parser.getLineNumber());
+        assertTrue(parser.getFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES));
+
+        parser.setInput(new StringReader("<c>&e;</c>"));
+        parser.next();
+        assertEquals("c", parser.getName());
+        assertEquals("", parser.getNamespace());
+        try {
+            parser.next();
+            fail("entity defined for the previous document");
+        }
+        catch (XmlPullParserException e) {
+        }
+        pool.release(parser);
+    }
+
+    public void testConfigurationChangeDropsParsers() throws Exception {
+        KXmlParserPool pool = new KXmlParserPool(4, 1 << 20);
+        KXmlParser old = pool.acquire();
+        KXmlParser idle = pool.acquire();
+        pool.release(idle);
+        assertEquals(1, pool.size());
+
+        pool.setFeature(FEATURE + "relaxed", true);
+        assertEquals(0, pool.size());
+
+        // parsers acquired before the change are not pooled again
+
+        pool.release(old);
+        assertEquals(0, pool.size());
+
+        KXmlParser parser = pool.acquire();
+        assertTrue(parser.getFeature(FEATURE + "relaxed"));
+        pool.release(parser);
+        assertEquals(1, pool.size());
+    }
+
+    public void testBufferLimit() throws Exception {
+        KXmlParserPool pool = new KXmlParserPool(4, 1000);
+        KXmlParser parser = pool.acquire();
+        pool.release(parser);
+        assertEquals(0, pool.size());
+        assertTrue(pool.getHighWaterMark() > 1000);
+    }
+
+    public void testThreads() throws Exception {
+        final KXmlParserPool pool = new KXmlParserPool(3, 1 << 20);
+        pool.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+        final Hashtable inUse = new Hashtable();
+        final String[] failure = new String[1];
+        Thread[] threads = new Thread[8];
+
+        for (int t = 0; t < threads.length; t++) {
+            final int id = t;
+            threads[t] = new Thread() {
+                public void run() {
+                    try {
+                        for (int i = 0; i < 500; i++) {
+                            KXmlParser parser = pool.acquire();
+                            if (inUse.put(parser, parser) != null)
+                                throw new Exception("parser handed out twice");
+                            if (parser.getEventType() != XmlPullParser.START_DOCUMENT
+                                || parser.getDepth() != 0)
+                                throw new Exception("parser not reset");
+
+                            String text = id + "-" + i;
+                            parser.setInput(new StringReader(
+                                "<p:r xmlns:p='u" + id + "'><t>" + text + "</t></p:r>"));
+                            parser.nextTag();
+                            if (!("u" + id).equals(parser.getNamespace()))
+                                throw new Exception("wrong namespace");
+                            parser.nextTag();
+                            if (!text.equals(parser.nextText()))
+                                throw new Exception("wrong text");
+
+                            inUse.remove(parser);
+                            pool.release(parser);
+                        }
+                    }
+                    catch (Exception e) {
+                        synchronized (failure) {
+                            failure[0] = e.toString();
+                        }
+                    }
+                }
+            };
+        }
+
+        for (int t = 0; t < threads.length; t++)
+            threads[t].start();
+        for (int t = 0; t < threads.length; t++)
+            threads[t].join();
+
+        assertNull(failure[0], failure[0]);
+        assertTrue(pool.size() <= 3);
+    }
+}
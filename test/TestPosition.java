@@ -0,0 +1,121 @@
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+
+import junit.framework.TestCase;
+
+import org.kxml2.io.KXmlParser;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+/** 
+ * Compares the positions computed on demand without the track-position
+ * feature with the ones tracked while parsing */
+
+public class TestPosition extends TestCase {
+
+    static final String TRACK =
+        "http://xmlpull.org/v1/doc/features.html#track-position";
+
+    static final String[] ENDS = { "\n", "\r", "\r\n", "\n\r", "\r\r" };
+
+    static final String[] TAILS = {
+        "", " ", "\r", "\n", "\r\n", "\r\n ", "<!--c-->", "<?p?>\r" };
+
+    /** Unterminated markup at the end, read up to EOF in relaxed mode */
+
+    static final String[] BROKEN = {
+        "<b", "<b x", "<b x='1", "</b", "<!--", "<![CDATA[x", "&amp", "&",
+        "<?p", "<", "yz" };
+
+    static String positions(
+        String doc,
+        int source,
+        boolean track,
+        boolean relaxed,
+        boolean every)
+        throws Exception {
+
+        KXmlParser parser = new KXmlParser();
+        parser.setFeature(TRACK, track);
+        parser.setFeature("http://xmlpull.org/v1/doc/features.html#relaxed", relaxed);
+        parser.setProperty(
+            "http://xmlpull.org/v1/doc/properties.html#buffer-size",
+            new Integer(128));
+
+        switch (source) {
+            case 0 :
+                parser.setInput(new StringReader(doc));
+                break;
+            case 1 :
+                parser.setInput(doc);
+                break;
+            case 2 :
+                parser.setInput(doc.toCharArray(), 0, doc.length());
+                break;
+            default :
+                parser.setInput(
+                    new ByteArrayInputStream(doc.getBytes("UTF-8")),
+                    null);
+        }
+
+        StringBuffer buf = new StringBuffer();
+        for (int i = 0; i < 1000; i++) {
+            int type;
+            try {
+                type = parser.nextToken();
+            }
+            catch (XmlPullParserException e) {
+                type = -1;
+            }
+            if (every || type == XmlPullParser.END_DOCUMENT || type == -1) {
+                buf.append(type).append(':');
+                buf.append(parser.getLineNumber()).append(',');
+                buf.append(parser.getColumnNumber()).append(' ');
+            }
+            if (type == XmlPullParser.END_DOCUMENT || (type == -1 && !relaxed))
+                break;
+        }
+        return buf.toString();
+    }
+
+    static String document(int length, String end) {
+        StringBuffer buf = new StringBuffer("<a>");
+        while (buf.length() < length)
+            buf.append(buf.length() % 5 == 0 ? end : "x");
+        return buf.toString();
+    }
+
+    static void check(String doc, boolean relaxed) throws Exception {
+        for (int source = 0; source < 4; source++)
+            for (int every = 0; every < 2; every++)
+                assertEquals(
+                    source + " " + every + " " + doc,
+                    positions(doc, source, true, relaxed, every == 0),
+                    positions(doc, source, false, relaxed, every == 0));
+    }
+
+    public void testLineEnds() throws Exception {
+        for (int e = 0; e < ENDS.length; e++)
+            for (int t = 0; t < TAILS.length; t++)
+                for (int n = 3; n < 12; n++)
+                    check(document(n, ENDS[e]) + "</a>" + TAILS[t], false);
+    }
+
+    /** Positions around refills of the 128 char buffer */
+
+    public void testBufferBoundaries() throws Exception {
+        for (int e = 0; e < ENDS.length; e++)
+            for (int t = 0; t < TAILS.length; t++)
+                for (int n = 118; n < 140; n++)
+                    check(document(n, ENDS[e]) + "</a>" + TAILS[t], false);
+    }
+
+    public void testEndOfInput() throws Exception {
+        for (int e = 0; e < ENDS.length; e++)
+            for (int b = 0; b < BROKEN.length; b++) {
+                check("<a>" + ENDS[e] + "x</a>" + ENDS[e] + BROKEN[b], true);
+                check("<a>" + ENDS[e] + "x</a>" + ENDS[e] + BROKEN[b], false);
+                check(document(125, ENDS[e]) + BROKEN[b], true);
+            }
+    }
+}
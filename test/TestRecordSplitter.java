@@ -0,0 +1,263 @@
+import junit.framework.TestCase;
+
+import org.kxml2.io.KXmlParser;
+import org.kxml2.io.RecordSplitter;
+import org.kxml2.io.SymbolTable;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+public class TestRecordSplitter extends TestCase {
+
+    static final String FEATURE = "http://xmlpull.org/v1/doc/features.html#";
+    static final String PROPERTY = "http://xmlpull.org/v1/doc/properties.html#";
+
+    static final String RECORDS =
+        "<rec id='1'><a><b>x</b></a><rec>nested</rec></rec>\n"
+            + "<!-- <rec> </root> -->"
+            + "<rec q='>' r=\"'>\"><![CDATA[</rec> <rec>]]></rec>\n"
+            + "<?pi </root>?><p:rec xmlns:p='urn:p'><p:c p:d='1'/></p:rec>"
+            + "<rec/><rec>&amp; &lt;</rec>";
+
+    static final String DOC =
+        "<?xml version='1.0'?><!-- prolog --><root xmlns='urn:d' a='1'>"
+            + RECORDS + RECORDS + RECORDS + "</root>";
+
+    static String describe(XmlPullParser parser)
+        throws XmlPullParserException {
+
+        StringBuffer buf = new StringBuffer();
+        buf.append(XmlPullParser.TYPES[parser.getEventType()]);
+        buf.append(' ').append(parser.getDepth());
+        buf.append(' ').append(parser.getNamespace());
+        buf.append(' ').append(parser.getName());
+        buf.append(' ').append(parser.getText());
+        for (int i = 0; i < parser.getAttributeCount(); i++)
+            buf.append(' ').append(parser.getAttributeName(i)).append('=').append(
+                parser.getAttributeValue(i));
+        return buf.append('\n').toString();
+    }
+
+    /** Returns the events of the root content, parsed in one pass */
+
+    static String expected(String doc) throws Exception {
+        KXmlParser parser = new KXmlParser();
+        parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+        parser.setInput(doc.toCharArray(), 0, doc.length());
+        parser.nextTag();
+        StringBuffer buf = new StringBuffer();
+        while (parser.nextToken() != XmlPullParser.END_TAG
+            || parser.getDepth() > 1)
+            buf.append(describe(parser));
+        return buf.toString();
+    }
+
+    static RecordSplitter splitter(String doc, KXmlParser root, int off)
+        throws Exception {
+        char[] buf = new char[off + doc.length() + 3];
+        doc.getChars(0, doc.length(), buf, off);
+        return new RecordSplitter(root, buf, off, doc.length());
+    }
+
+    static String parseRanges(RecordSplitter splitter, int[] cuts)
+        throws Exception {
+
+        StringBuffer buf = new StringBuffer();
+        for (int i = 0; i + 1 < cuts.length; i++) {
+            KXmlParser parser = splitter.createParser(cuts[i], cuts[i + 1]);
+            int depth = parser.getDepth();
+            while (parser.nextToken() != XmlPullParser.END_DOCUMENT)
+                buf.append(describe(parser));
+
+            // each range ends at the depth it started at
+
+            assertEquals(depth, parser.getDepth());
+        }
+        return buf.toString();
+    }
+
+    public void testRangesMatchSinglePass() throws Exception {
+        String expected = expected(DOC);
+        int start = DOC.indexOf("<rec");
+        int end = DOC.lastIndexOf("</root>");
+
+        for (int off = 0; off < 3; off++)
+            for (int parts = 1; parts <= 30; parts++) {
+                KXmlParser root = new KXmlParser();
+                root.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+                RecordSplitter splitter = splitter(DOC, root, off);
+                assertEquals("root", root.getName());
+
+                int[] cuts = splitter.split(parts);
+                assertTrue(cuts.length >= 2);
+                assertTrue(cuts.length <= parts + 1);
+                assertEquals(off + start, cuts[0]);
+                assertEquals(off + end, cuts[cuts.length - 1]);
+                for (int i = 1; i < cuts.length; i++)
+                    assertTrue(cuts[i - 1] < cuts[i]);
+
+                assertEquals(parts + " parts", expected, parseRanges(splitter, cuts));
+            }
+    }
+
+    /** Cuts are only placed after top level records */
+
+    public void testCutsAtRecordEnds() throws Exception {
+        KXmlParser root = new KXmlParser();
+        RecordSplitter splitter = splitter(DOC, root, 0);
+        int[] cuts = splitter.split(100);
+        assertTrue(cuts.length > 10);
+
+        for (int i = 1; i < cuts.length - 1; i++) {
+            String before = DOC.substring(0, cuts[i]);
+            assertTrue(
+                before,
+                before.endsWith("</rec>")
+                    || before.endsWith("</rec>\n")
+                    || before.endsWith("</p:rec>")
+                    || before.endsWith("<rec/>")
+                    || before.endsWith("-->")
+                    || before.endsWith("?>"));
+        }
+    }
+
+    public void testEmptyRoot() throws Exception {
+        String[] docs = { "<root/>", "<root></root>", "<?xml version='1.0'?>\n<root a='>'/>" };
+
+        for (int i = 0; i < docs.length; i++) {
+            KXmlParser root = new KXmlParser();
+            RecordSplitter splitter = splitter(docs[i], root, 2);
+            int[] cuts = splitter.split(4);
+            assertEquals(docs[i], 2, cuts.length);
+            assertTrue(cuts[1] - cuts[0] == 0);
+            KXmlParser parser = splitter.createParser(cuts[0], cuts[1]);
+            assertEquals(XmlPullParser.END_DOCUMENT, parser.next());
+        }
+    }
+
+    public void testNoRoot() throws Exception {
+        try {
+            splitter("<!-- nothing -->", new KXmlParser(), 0);
+            fail("no root element accepted");
+        }
+        catch (XmlPullParserException e) {
+        }
+    }
+
+    public void testConfiguration() throws Exception {
+        SymbolTable symbols = new SymbolTable();
+        KXmlParser root = new KXmlParser();
+        root.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+        root.setFeature(FEATURE + "relaxed", true);
+        root.setFeature(FEATURE + "names-interned", true);
+        root.setFeature(FEATURE + "track-position", false);
+        root.setProperty(PROPERTY + "symbol-table", symbols);
+        root.setProperty(PROPERTY + "max-depth", new Integer(3));
+        root.setProperty(PROPERTY + "max-text-length", new Integer(20));
+        root.setProperty(PROPERTY + "text-chunk-size", new Integer(4));
+
+        String doc = "<root><a>&e; text</a>\n<a><b><c/></b></a>"
+            + "<a v='0123456789012345678901234'/></root>";
+        RecordSplitter splitter = splitter(doc, root, 1);
+        root.defineEntityReplacementText("e", "E");
+
+        int[] cuts = splitter.split(100);
+        assertEquals(4, cuts.length);
+
+        KXmlParser parser = splitter.createParser(cuts[0], cuts[1]);
+        assertTrue(parser.getFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES));
+        assertTrue(parser.getFeature(FEATURE + "relaxed"));
+        assertTrue(parser.getFeature(FEATURE + "names-interned"));
+        assertFalse(parser.getFeature(FEATURE + "track-position"));
+        assertSame(symbols, parser.getProperty(PROPERTY + "symbol-table"));
+        assertEquals(new Integer(3), parser.getProperty(PROPERTY + "max-depth"));
+        assertEquals(new Integer(20), parser.getProperty(PROPERTY + "max-text-length"));
+        assertEquals(new Integer(4), parser.getProperty(PROPERTY + "text-chunk-size"));
+
+        // the custom entity, text chunks and positions
+
+        parser.next();
+        assertEquals(XmlPullParser.TEXT, parser.next());
+        assertEquals("E te", parser.getText());
+        assertEquals(XmlPullParser.TEXT, parser.next());
+        assertEquals("xt", parser.getText());
+        assertEquals(1, parser.getLineNumber());
+
+        // the depth limit counts the root element, as in the root parser
+
+        parser = splitter.createParser(cuts[1], cuts[2]);
+        try {
+            while (parser.next() != XmlPullParser.END_DOCUMENT) {
+            }
+            fail("max-depth not applied");
+        }
+        catch (XmlPullParserException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("max-depth"));
+        }
+
+        parser = splitter.createParser(cuts[2], cuts[3]);
+        try {
+            while (parser.next() != XmlPullParser.END_DOCUMENT) {
+            }
+            fail("max-text-length not applied");
+        }
+        catch (XmlPullParserException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("max-text-length"));
+        }
+    }
+
+    /** The root parser's own symbol table is not shared across threads */
+
+    public void testPrivateSymbolTable() throws Exception {
+        KXmlParser root = new KXmlParser();
+        RecordSplitter splitter = splitter(DOC, root, 0);
+        int[] cuts = splitter.split(2);
+        KXmlParser parser = splitter.createParser(cuts[0], cuts[1]);
+        assertTrue(
+            root.getProperty(PROPERTY + "symbol-table")
+                != parser.getProperty(PROPERTY + "symbol-table"));
+    }
+
+    public void testSetContext() throws Exception {
+        String doc = "<r xmlns='urn:d' xmlns:p='urn:p'><s xmlns:q='urn:q'><p:x q:y='1'/></s></r>";
+        KXmlParser parent = new KXmlParser();
+        parent.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+        parent.setInput(doc.toCharArray(), 0, doc.length());
+        parent.nextTag();
+        parent.nextTag();
+        assertEquals("s", parent.getName());
+
+        String content = "<p:x q:y='1'/><z/></s></r>";
+        KXmlParser parser = new KXmlParser();
+        parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+        parser.setInput(content.toCharArray(), 0, content.length());
+        parser.setContext(parent);
+        assertEquals(2, parser.getDepth());
+        assertEquals("urn:q", parser.getNamespace("q"));
+        assertEquals("urn:d", parser.getNamespace(null));
+
+        assertEquals(XmlPullParser.START_TAG, parser.nextTag());
+        assertEquals("urn:p", parser.getNamespace());
+        assertEquals("urn:q", parser.getAttributeNamespace(0));
+        assertEquals(3, parser.getDepth());
+        parser.nextTag();
+        parser.nextTag();
+        assertEquals("urn:d", parser.getNamespace());
+        parser.nextTag();
+
+        // the end tags of the parent elements are checked
+
+        assertEquals(XmlPullParser.END_TAG, parser.nextTag());
+        assertEquals("s", parser.getName());
+        assertEquals("urn:d", parser.getNamespace());
+        assertEquals(XmlPullParser.END_TAG, parser.nextTag());
+        assertEquals("r", parser.getName());
+        assertEquals(XmlPullParser.END_DOCUMENT, parser.next());
+
+        // the parent is not changed
+
+        assertEquals("s", parent.getName());
+        assertEquals(2, parent.getDepth());
+        assertEquals(XmlPullParser.START_TAG, parent.nextTag());
+        assertEquals("x", parent.getName());
+    }
+}
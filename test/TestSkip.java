@@ -0,0 +1,164 @@
+import java.io.StringReader;
+
+import junit.framework.TestCase;
+
+import org.kxml2.io.KXmlParser;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+public class TestSkip extends TestCase {
+
+    static KXmlParser parser(String doc, boolean relaxed, boolean nsp)
+        throws Exception {
+
+        KXmlParser parser = new KXmlParser();
+        parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, nsp);
+        parser.setFeature("http://xmlpull.org/v1/doc/features.html#relaxed", relaxed);
+        parser.setInput(new StringReader(doc));
+        return parser;
+    }
+
+    /** skips the content of the second element of doc, <s> */
+
+    static KXmlParser skip(String doc, boolean relaxed, boolean nsp)
+        throws Exception {
+
+        KXmlParser parser = parser(doc, relaxed, nsp);
+        parser.nextTag();
+        parser.nextTag();
+        assertEquals("s", parser.getName());
+        parser.skipSubTree();
+        assertEquals(XmlPullParser.END_TAG, parser.getEventType());
+        assertEquals("s", parser.getName());
+        return parser;
+    }
+
+    static void malformed(String content, boolean nsp) throws Exception {
+        String doc = "<r><s>" + content + "</s><t/></r>";
+        try {
+            skip(doc, false, nsp);
+            fail("accepted: " + content);
+        }
+        catch (XmlPullParserException e) {
+        }
+
+        // relaxed mode skips it
+
+        KXmlParser parser = skip(doc, true, nsp);
+        assertEquals(XmlPullParser.START_TAG, parser.nextTag());
+        assertEquals("t", parser.getName());
+    }
+
+    public void testSkipContent() throws Exception {
+        String doc =
+            "<r><s a='1' b=\"&amp;\">text &lt; &#x41;&#66; more"
+                + "<x xmlns:p='urn:p'><p:y p:z='&quot;'/>]] &gt;</x>"
+                + "<!-- </s> --><![CDATA[</s> ]] >]]><?pi </s>?>"
+                + "<s><s/></s></s>\n<t>after</t></r>";
+
+        for (int mode = 0; mode < 4; mode++) {
+            KXmlParser parser = skip(doc, mode >= 2, (mode & 1) != 0);
+            assertEquals(2, parser.getDepth());
+            assertEquals(XmlPullParser.START_TAG, parser.nextTag());
+            assertEquals("t", parser.getName());
+            assertEquals(2, parser.getLineNumber());
+            assertEquals("after", parser.nextText());
+            assertEquals(XmlPullParser.END_TAG, parser.nextTag());
+            assertEquals(XmlPullParser.END_DOCUMENT, parser.next());
+        }
+    }
+
+    public void testEmptyContent() throws Exception {
+        KXmlParser parser = skip("<r><s></s><t/></r>", false, false);
+        assertEquals(XmlPullParser.START_TAG, parser.nextTag());
+        assertEquals("t", parser.getName());
+    }
+
+    public void testDefinedEntity() throws Exception {
+        KXmlParser parser = parser("<r><s>&e;</s></r>", false, false);
+        parser.defineEntityReplacementText("e", "x");
+        parser.nextTag();
+        parser.nextTag();
+        parser.skipSubTree();
+        assertEquals("s", parser.getName());
+    }
+
+    public void testUndefinedEntity() throws Exception {
+        malformed("a &bogus; b", false);
+    }
+
+    public void testUnterminatedEntity() throws Exception {
+        malformed("a &amp b", false);
+    }
+
+    public void testIllegalCharRef() throws Exception {
+        malformed("&#xZZ;", false);
+    }
+
+    public void testCdataEnd() throws Exception {
+        malformed("a ]]> b", false);
+        malformed("<x>]]]></x>", false);
+    }
+
+    public void testUnquotedAttribute() throws Exception {
+        malformed("<x y=noquote/>", false);
+    }
+
+    public void testDuplicateAttribute() throws Exception {
+        malformed("<x y='1' y='2'/>", false);
+    }
+
+    public void testUndefinedPrefix() throws Exception {
+        malformed("<q:x/>", true);
+    }
+
+    public void testEndTagMismatch() throws Exception {
+        malformed("<x><y></x></y>", false);
+    }
+
+    public void testUnexpectedEof() throws Exception {
+        KXmlParser parser = parser("<r><s><x>text", false, false);
+        parser.nextTag();
+        parser.nextTag();
+        try {
+            parser.skipSubTree();
+            fail("unexpected eof accepted");
+        }
+        catch (XmlPullParserException e) {
+        }
+    }
+
+    public void testSkipToStartTag() throws Exception {
+        String doc =
+            "<r>&lt;a&gt; <a>1</a><x xmlns='urn:x'><a>2</a></x>"
+                + "<!-- <a>3</a> --><![CDATA[<a>4</a>]]><b><a>5</a></b></r>";
+
+        KXmlParser parser = parser(doc, false, true);
+        StringBuffer buf = new StringBuffer();
+        while (parser.skipToStartTag(null, "a") == XmlPullParser.START_TAG)
+            buf.append(parser.getNamespace() + ":" + parser.nextText() + " ");
+        assertEquals(":1 urn:x:2 :5 ", buf.toString());
+
+        parser = parser(doc, false, true);
+        assertEquals(XmlPullParser.START_TAG, parser.skipToStartTag("urn:x", "a"));
+        assertEquals("2", parser.nextText());
+        assertEquals(XmlPullParser.END_DOCUMENT, parser.skipToStartTag("urn:x", "a"));
+    }
+
+    public void testSkipToStartTagStrict() throws Exception {
+        String[] content = { "&bogus;", "]]>", "<x y=noquote/>", "<q:x/>" };
+
+        for (int i = 0; i < content.length; i++) {
+            String doc = "<r>" + content[i] + "<a/></r>";
+            try {
+                parser(doc, false, true).skipToStartTag(null, "a");
+                fail("accepted: " + content[i]);
+            }
+            catch (XmlPullParserException e) {
+            }
+
+            KXmlParser parser = parser(doc, true, true);
+            assertEquals(XmlPullParser.START_TAG, parser.skipToStartTag(null, "a"));
+        }
+    }
+}
@@ -0,0 +1,199 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+
+import junit.framework.TestCase;
+
+import org.kxml2.io.KXmlParser;
+import org.xmlpull.v1.XmlPullParser;
+
+public class TestTextChunk extends TestCase {
+
+    static final String CHUNK_SIZE =
+        "http://xmlpull.org/v1/doc/properties.html#text-chunk-size";
+
+    static KXmlParser parser(int chunk) throws Exception {
+        KXmlParser parser = new KXmlParser();
+        parser.setProperty(CHUNK_SIZE, new Integer(chunk));
+        return parser;
+    }
+
+    /** 
+     * Returns the events, with the text of TEXT, CDSECT and ENTITY_REF
+     * events between '|', checking that no text event exceeds max chars or is
+     * empty */
+
+    static String events(KXmlParser parser, boolean tokens, int max)
+        throws Exception {
+
+        StringBuffer buf = new StringBuffer();
+        int type;
+
+        while ((type = tokens ? parser.nextToken() : parser.next())
+            != XmlPullParser.END_DOCUMENT) {
+
+            if (type == XmlPullParser.TEXT
+                || type == XmlPullParser.CDSECT
+                || type == XmlPullParser.ENTITY_REF) {
+                String text = parser.getText();
+                assertTrue(text.length() > 0);
+                assertTrue(text.length() + " chars", text.length() <= max);
+                buf.append('|').append(text).append('|');
+            }
+            else if (type == XmlPullParser.START_TAG)
+                buf.append('<').append(parser.getName()).append('>');
+            else if (type == XmlPullParser.END_TAG)
+                buf.append("</").append(parser.getName()).append('>');
+        }
+        return buf.toString();
+    }
+
+    static String joined(String events) {
+        StringBuffer buf = new StringBuffer();
+        for (int i = 0; i < events.length(); i++) {
+            char c = events.charAt(i);
+            if (c != '|')
+                buf.append(c);
+        }
+        return buf.toString();
+    }
+
+    static String cdata(int length) {
+        StringBuffer buf = new StringBuffer();
+        for (int i = 0; i < length; i++)
+            buf.append((char) ('a' + i % 26));
+        return buf.toString();
+    }
+
+    public void testLongCdata() throws Exception {
+        String content = cdata(5000);
+        String doc = "<r><![CDATA[" + content + "]]></r>";
+
+        for (int tokens = 0; tokens < 2; tokens++) {
+            KXmlParser parser = parser(100);
+            parser.setInput(new StringReader(doc));
+            String events = events(parser, tokens == 1, 100);
+
+            assertEquals("<r>" + content + "</r>", joined(events));
+
+            // 50 chunks of 100 chars
+
+            int count = 0;
+            for (int i = events.indexOf('|'); i != -1; i = events.indexOf('|', i + 1))
+                count++;
+            assertEquals(2 * 50, count);
+        }
+    }
+
+    public void testMixedText() throws Exception {
+        String doc =
+            "<r>text &amp; more<![CDATA[" + cdata(250)
+                + "]]>tail<![CDATA[x]]><b/></r>";
+
+        KXmlParser expected = new KXmlParser();
+        expected.setInput(new StringReader(doc));
+        String all = joined(events(expected, false, Integer.MAX_VALUE));
+
+        for (int chunk = 1; chunk < 300; chunk += 7)
+            for (int tokens = 0; tokens < 2; tokens++) {
+                KXmlParser parser = parser(chunk);
+                parser.setInput(new StringReader(doc));
+
+                // an entity may exceed the chunk size by its replacement
+
+                assertEquals(
+                    "chunk " + chunk,
+                    all,
+                    joined(events(parser, tokens == 1, chunk + 1)));
+            }
+    }
+
+    /** A chunk does not end right before the closing "]]>" */
+
+    public void testBrackets() throws Exception {
+        String doc = "<r><![CDATA[ab]cd]]ef]]]]]></r>";
+
+        for (int chunk = 1; chunk < 20; chunk++) {
+            KXmlParser parser = parser(chunk);
+            parser.setInput(new StringReader(doc));
+            assertEquals(
+                "chunk " + chunk,
+                "<r>ab]cd]]ef]]]</r>",
+                joined(events(parser, true, chunk + 3)));
+        }
+    }
+
+    public void testFeedInput() throws Exception {
+        byte[] data =
+            ("<r><![CDATA[" + cdata(300) + "]]]></r>").getBytes("UTF-8");
+
+        for (int cut = 0; cut <= data.length; cut += 5) {
+            KXmlParser parser = parser(64);
+            parser.setFeedInput("UTF-8");
+            parser.feed(data, 0, cut);
+
+            StringBuffer buf = new StringBuffer();
+            int type;
+            while ((type = parser.next()) != XmlPullParser.END_DOCUMENT) {
+                if (type == KXmlParser.NEED_INPUT) {
+                    parser.feed(data, cut, data.length - cut);
+                    parser.endInput();
+                }
+                else if (type == XmlPullParser.TEXT) {
+                    assertTrue(parser.getText().length() <= 64);
+                    buf.append(parser.getText());
+                }
+            }
+            assertEquals("cut " + cut, cdata(300) + "]", buf.toString());
+        }
+    }
+
+    public void testSkipSubTree() throws Exception {
+        KXmlParser parser = parser(10);
+        parser.setInput(
+            new StringReader(
+                "<r><s><![CDATA[" + cdata(50) + "</s><t>]]></s><t/></r>"));
+        parser.nextTag();
+        parser.nextTag();
+        parser.skipSubTree();
+        assertEquals("s", parser.getName());
+        assertEquals(XmlPullParser.START_TAG, parser.nextTag());
+        assertEquals("t", parser.getName());
+    }
+
+    public void testSkipToStartTag() throws Exception {
+        KXmlParser parser = parser(10);
+        parser.setInput(
+            new StringReader(
+                "<r><![CDATA[" + cdata(50) + "<t a='1'>]]><t a='2'/></r>"));
+        parser.next();
+        assertEquals(XmlPullParser.TEXT, parser.next());
+        assertEquals(XmlPullParser.START_TAG, parser.skipToStartTag(null, "t"));
+        assertEquals("2", parser.getAttributeValue(null, "a"));
+    }
+
+    public void testCheckpoint() throws Exception {
+        byte[] data =
+            ("<r><![CDATA[" + cdata(100) + "]]></r>").getBytes("UTF-8");
+
+        KXmlParser parser = parser(30);
+        parser.setInput(new ByteArrayInputStream(data), null);
+        parser.next();
+        parser.next();
+        assertEquals(cdata(30), parser.getText());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        parser.writeCheckpoint(out);
+
+        KXmlParser resumed = new KXmlParser();
+        resumed.resume(
+            new ByteArrayInputStream(out.toByteArray()),
+            new ByteArrayInputStream(data));
+
+        StringBuffer buf = new StringBuffer();
+        while (resumed.next() == XmlPullParser.TEXT)
+            buf.append(resumed.getText());
+        assertEquals(cdata(100).substring(30), buf.toString());
+        assertEquals(XmlPullParser.END_TAG, resumed.getEventType());
+    }
+}